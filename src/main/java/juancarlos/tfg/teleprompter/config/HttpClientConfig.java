@@ -0,0 +1,38 @@
+package juancarlos.tfg.teleprompter.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Configuration class for outbound HTTP calls.
+ * Provides a single shared HTTP client, so connections to the AI providers are pooled
+ * and kept alive between calls instead of paying a TLS handshake per request.
+ *
+ * @author Juan Carlos
+ */
+@Configuration
+public class HttpClientConfig {
+
+    /**
+     * Creates the shared HTTP client.
+     * Prefers HTTP/2, which multiplexes concurrent requests over one connection, and falls back
+     * to pooled HTTP/1.1 connections. The JDK pool size and keep-alive are JVM-wide settings that
+     * are read once, so they are left to the command line, for example
+     * {@code -Djdk.httpclient.keepalive.timeout=300}.
+     *
+     * @param connectTimeoutMs The connect timeout in milliseconds
+     * @return The shared HTTP client
+     */
+    @Bean
+    public HttpClient httpClient(@Value("${teleprompter.http.connect-timeout-ms:5000}") long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+}
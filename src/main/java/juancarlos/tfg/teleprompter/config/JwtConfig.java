@@ -0,0 +1,74 @@
+package juancarlos.tfg.teleprompter.config;
+
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+/**
+ * Configuration class for the signed access tokens.
+ * Tokens are signed with HMAC-SHA256 using a secret shared by all the nodes,
+ * so any node can verify a token without a database round trip.
+ *
+ * @author Juan Carlos
+ */
+@Configuration
+@Slf4j
+public class JwtConfig {
+
+    private static final int MIN_SECRET_BYTES = 32;
+
+    /**
+     * Creates the key used to sign and verify access tokens.
+     * Without a configured secret a random key is generated, which is only suitable for a single
+     * node: tokens become invalid on restart.
+     *
+     * @param secret The shared secret, at least 32 bytes long
+     * @return The signing key
+     */
+    @Bean
+    public SecretKey jwtSigningKey(@Value("${teleprompter.auth.jwt.secret:}") String secret) {
+        byte[] key = secret.getBytes(StandardCharsets.UTF_8);
+        if (secret.isBlank()) {
+            log.warn("No JWT secret configured, using a random key: tokens will not survive a restart or work across nodes");
+            key = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(key);
+        } else if (key.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("teleprompter.auth.jwt.secret must be at least " + MIN_SECRET_BYTES + " bytes long");
+        }
+        return new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    /**
+     * Creates the encoder that signs access tokens.
+     *
+     * @param jwtSigningKey The signing key
+     * @return The JWT encoder
+     */
+    @Bean
+    public JwtEncoder jwtEncoder(SecretKey jwtSigningKey) {
+        return new NimbusJwtEncoder(new ImmutableSecret<>(jwtSigningKey));
+    }
+
+    /**
+     * Creates the decoder that verifies the signature and expiry of bearer tokens.
+     *
+     * @param jwtSigningKey The signing key
+     * @return The JWT decoder
+     */
+    @Bean
+    public JwtDecoder jwtDecoder(SecretKey jwtSigningKey) {
+        return NimbusJwtDecoder.withSecretKey(jwtSigningKey).macAlgorithm(MacAlgorithm.HS256).build();
+    }
+}
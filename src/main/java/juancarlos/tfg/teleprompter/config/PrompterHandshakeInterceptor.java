@@ -0,0 +1,96 @@
+package juancarlos.tfg.teleprompter.config;
+
+import juancarlos.tfg.teleprompter.controllers.PrompterControlHandler;
+import juancarlos.tfg.teleprompter.models.Teleprompter;
+import juancarlos.tfg.teleprompter.services.TelePrompterService;
+import juancarlos.tfg.teleprompter.services.WebSocketTicketService;
+import juancarlos.tfg.teleprompter.utils.Utils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Handshake interceptor for live prompter control channels.
+ * Copies the HTTP session attributes to the WebSocket session and only accepts the upgrade
+ * when the logged in user owns the teleprompter in the request path. Clients without a session
+ * authenticate with a one-time ticket from /auth/ws-ticket, sent in the ticket query parameter,
+ * or with an access token in the Authorization header.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class PrompterHandshakeInterceptor extends HttpSessionHandshakeInterceptor {
+
+    private static final String TICKET_PARAMETER = "ticket";
+
+    private final TelePrompterService telePrompterService;
+    private final WebSocketTicketService webSocketTicketService;
+    private final Utils utils;
+
+    /**
+     * Constructs a new PrompterHandshakeInterceptor.
+     *
+     * @param telePrompterService The service used to check ownership of the teleprompter
+     * @param webSocketTicketService The service that redeems handshake tickets
+     * @param utils The helper used to resolve the user of a token-authenticated handshake
+     */
+    public PrompterHandshakeInterceptor(TelePrompterService telePrompterService, WebSocketTicketService webSocketTicketService,
+                                        Utils utils) {
+        this.telePrompterService = telePrompterService;
+        this.webSocketTicketService = webSocketTicketService;
+        this.utils = utils;
+    }
+
+    /**
+     * Rejects the handshake with 403 unless the session user owns the requested teleprompter.
+     *
+     * @param request The handshake request
+     * @param response The handshake response
+     * @param wsHandler The target WebSocket handler
+     * @param attributes The attributes of the WebSocket session
+     * @return true if the handshake may proceed, false otherwise
+     * @throws Exception if copying the session attributes fails
+     */
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
+        super.beforeHandshake(request, response, wsHandler, attributes);
+
+        String path = request.getURI().getPath();
+        Object user = attributes.get("user");
+        if (user == null) {
+            String ticket = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst(TICKET_PARAMETER);
+            user = ticket != null ? webSocketTicketService.redeem(ticket) : utils.currentUsername();
+            if (user != null) {
+                attributes.put("user", user);
+            }
+        }
+        Teleprompter telePrompter = null;
+        try {
+            Long id = Long.valueOf(path.substring(path.lastIndexOf('/') + 1));
+            if (user != null) {
+                telePrompter = telePrompterService.getPrompterById(id, (String) user);
+            }
+        } catch (NumberFormatException e) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+
+        if (telePrompter == null) {
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return false;
+        }
+
+        attributes.put(PrompterControlHandler.TELEPROMPTER_ID, telePrompter.getId());
+        if (telePrompter.getSpeed() != null) {
+            attributes.put(PrompterControlHandler.SPEED, telePrompter.getSpeed());
+        }
+        return true;
+    }
+}
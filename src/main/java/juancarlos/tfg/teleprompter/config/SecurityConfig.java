@@ -1,13 +1,19 @@
 package juancarlos.tfg.teleprompter.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
+import org.springframework.security.oauth2.server.resource.web.DefaultBearerTokenResolver;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -21,6 +27,10 @@ import java.util.List;
 /**
  * Security configuration class for the application.
  * Configures security settings including authentication, authorization, CORS, and session management.
+ * Requests are authenticated either by the HTTP session or by a signed access token in the
+ * Authorization header; in stateless mode no sessions are created.
+ * Only the health endpoint of the actuator is public; metrics require an authenticated user.
+ * The fake AI provider under /stub is only reachable with the ai-stub profile.
  *
  * @author Juan Carlos
  */
@@ -30,24 +40,30 @@ public class SecurityConfig {
 
     /**
      * Configures the security filter chain with authentication and authorization rules.
-     * Sets up CORS, CSRF protection, session management, and endpoint access control.
+     * Sets up CORS, CSRF protection, session management, access token validation, and endpoint access control.
      *
      * @param http The HttpSecurity object to configure
+     * @param bearerTokenResolver The resolver that finds the access token of a request
+     * @param stateless Whether the application must not create HTTP sessions
      * @return A configured SecurityFilterChain
      * @throws Exception if an error occurs during configuration
      */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, BearerTokenResolver bearerTokenResolver,
+                                                   @Value("${teleprompter.auth.stateless:false}") boolean stateless) throws Exception {
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(AbstractHttpConfigurer::disable)
             .authorizeHttpRequests(auth -> auth
-                .requestMatchers("/auth/**", "/translator/**", "/teleprompter/**", "/users/**")
+                .requestMatchers("/auth/**", "/translator/**", "/teleprompter/**", "/users/**", "/actuator/health")
                 .permitAll()
                 .anyRequest()
                 .authenticated())
             .sessionManagement(session -> session
-                .sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED))
+                .sessionCreationPolicy(stateless ? SessionCreationPolicy.STATELESS : SessionCreationPolicy.IF_REQUIRED))
+            .oauth2ResourceServer(oauth2 -> oauth2
+                .jwt(Customizer.withDefaults())
+                .bearerTokenResolver(bearerTokenResolver))
             .logout(logout -> logout
                 .logoutSuccessUrl("/")
                 .invalidateHttpSession(true)
@@ -56,6 +72,47 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * Configures a filter chain that lets the AI client reach the fake AI provider without authentication.
+     * Only registered with the ai-stub profile, the same profile that enables the stub controller.
+     *
+     * @param http The HttpSecurity object to configure
+     * @return A configured SecurityFilterChain for the /stub endpoints
+     * @throws Exception if an error occurs during configuration
+     */
+    @Bean
+    @Order(1)
+    @Profile("ai-stub")
+    public SecurityFilterChain stubSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher("/stub/**")
+            .csrf(AbstractHttpConfigurer::disable)
+            .authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+
+        return http.build();
+    }
+
+    /**
+     * Creates the resolver that reads access tokens from the Authorization header.
+     * Tokens are never read from the URL, where they would end up in logs and browser history;
+     * browsers open live teleprompter connections with a one-time ticket instead. Login and refresh
+     * requests ignore the header, so an expired access token does not block getting a new one.
+     *
+     * @return A configured BearerTokenResolver
+     */
+    @Bean
+    public BearerTokenResolver bearerTokenResolver() {
+        DefaultBearerTokenResolver headerResolver = new DefaultBearerTokenResolver();
+        return request -> {
+            String path = request.getRequestURI().substring(request.getContextPath().length());
+            if (path.equals("/auth/login") || path.equals("/auth/refresh")) {
+                return null;
+            }
+            return headerResolver.resolve(request);
+        };
+    }
+
     /**
      * Configures CORS settings for the application.
      * Allows requests from any origin with specific HTTP methods and headers.
@@ -68,6 +125,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("*"));  // Permitir cualquier origen
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of("Content-Disposition", "Content-Range", "Accept-Ranges", "ETag", "Last-Modified",
+                "X-Total-Count", "X-Next-Cursor"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
@@ -0,0 +1,52 @@
+package juancarlos.tfg.teleprompter.config;
+
+import juancarlos.tfg.teleprompter.controllers.PrompterControlHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Configuration class for WebSocket endpoints.
+ * Registers the live prompter control channel at /teleprompter/live/{id}.
+ * Handshakes are only accepted from the configured origins, so other sites cannot open
+ * the channel with the credentials of a logged-in browser.
+ *
+ * @author Juan Carlos
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final PrompterControlHandler prompterControlHandler;
+    private final PrompterHandshakeInterceptor prompterHandshakeInterceptor;
+    private final String[] allowedOrigins;
+
+    /**
+     * Constructs a new WebSocketConfig.
+     *
+     * @param prompterControlHandler The handler of the live prompter control channel
+     * @param prompterHandshakeInterceptor The interceptor that authorizes handshakes
+     * @param allowedOrigins The origin patterns allowed to open WebSocket connections
+     */
+    public WebSocketConfig(PrompterControlHandler prompterControlHandler,
+                           PrompterHandshakeInterceptor prompterHandshakeInterceptor,
+                           @Value("${teleprompter.websocket.allowed-origins:http://localhost:[*]}") String[] allowedOrigins) {
+        this.prompterControlHandler = prompterControlHandler;
+        this.prompterHandshakeInterceptor = prompterHandshakeInterceptor;
+        this.allowedOrigins = allowedOrigins;
+    }
+
+    /**
+     * Registers the WebSocket handlers.
+     *
+     * @param registry The registry to add the handlers to
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(prompterControlHandler, "/teleprompter/live/*")
+                .addInterceptors(prompterHandshakeInterceptor)
+                .setAllowedOriginPatterns(allowedOrigins);
+    }
+}
@@ -1,9 +1,16 @@
 package juancarlos.tfg.teleprompter.controllers;
 
+import juancarlos.tfg.teleprompter.models.RefreshTokenRequest;
+import juancarlos.tfg.teleprompter.models.TokenPair;
 import juancarlos.tfg.teleprompter.models.User;
 import juancarlos.tfg.teleprompter.services.AuthService;
+import juancarlos.tfg.teleprompter.services.TokenService;
+import juancarlos.tfg.teleprompter.services.WebSocketTicketService;
+import juancarlos.tfg.teleprompter.utils.Utils;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -14,17 +21,23 @@ import java.util.Map;
 
 /**
  * Controller class that handles authentication-related operations including user registration,
- * login, session management, and logout functionality.
+ * login, token refresh, session management, and logout functionality.
+ * Logins return a signed access token and a refresh token; unless the application runs in
+ * stateless mode, they also start an HTTP session for clients that rely on the session cookie.
  *
  * @author Juan Carlos
  */
 @RestController
 @RequestMapping("/auth")
 @AllArgsConstructor
+@Slf4j
 public class AuthController {
 
     private final AuthService authService;
     private final PasswordEncoder passwordEncoder;
+    private final TokenService tokenService;
+    private final WebSocketTicketService webSocketTicketService;
+    private final Utils utils;
 
     /**
      * Registers a new user in the system.
@@ -46,14 +59,14 @@ public class AuthController {
     }
 
     /**
-     * Authenticates a user and creates a new session.
+     * Authenticates a user, issues a token pair and, outside stateless mode, creates a new session.
      *
      * @param request The user object containing login credentials (username/email and password)
-     * @param session The HTTP session to store user information
-     * @return ResponseEntity containing login status and user information if successful
+     * @param httpRequest The HTTP request, used to create the session
+     * @return ResponseEntity containing login status, user information and tokens if successful
      */
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody User request, HttpSession session) {
+    public ResponseEntity<Map<String, Object>> login(@RequestBody User request, HttpServletRequest httpRequest) {
         try {
             if ((request.getUsername() == null && request.getEmail() == null) || request.getPassword() == null) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid request format"));
@@ -78,11 +91,14 @@ public class AuthController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ User not verified"));
             }
 
-            session.setAttribute("user", loadedUser.getUsername());
+            if (!tokenService.isStateless()) {
+                httpRequest.getSession().setAttribute("user", loadedUser.getUsername());
+            }
             loadedUser.setLastLoginDate(LocalDate.now());
             authService.updateUser(loadedUser);
 
-            return ResponseEntity.ok(Map.of("message", "Login successful", "user", loadedUser));
+            TokenPair tokens = tokenService.issue(loadedUser);
+            return ResponseEntity.ok(Map.of("message", "Login successful", "user", loadedUser, "tokens", tokens));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid input"));
         } catch (Exception e) {
@@ -91,15 +107,36 @@ public class AuthController {
     }
 
     /**
-     * Checks if there is an active session for the current user.
+     * Exchanges a refresh token for a new token pair. The presented refresh token can not be used again.
+     *
+     * @param request The request containing the refresh token
+     * @return ResponseEntity containing the new tokens or error message
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<Object> refresh(@RequestBody RefreshTokenRequest request) {
+        if (request.getRefreshToken() == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid request format"));
+        }
+        try {
+            TokenPair tokens = tokenService.refresh(request.getRefreshToken());
+            if (tokens == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ Invalid refresh token"));
+            }
+            return ResponseEntity.ok(tokens);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "❌ Internal server error"));
+        }
+    }
+
+    /**
+     * Checks if there is an active session or a valid access token for the current user.
      *
-     * @param session The HTTP session to check
      * @return ResponseEntity containing session status information
      */
     @GetMapping("/check-session")
-    public ResponseEntity<Object> checkSession(HttpSession session) {
+    public ResponseEntity<Object> checkSession() {
         try {
-            String username = (String) session.getAttribute("user");
+            String username = utils.currentUsername();
             if (username == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "No active session"));
             }
@@ -111,19 +148,43 @@ public class AuthController {
     }
 
     /**
-     * Logs out the current user by invalidating their session.
+     * Issues a one-time ticket for opening a live prompter WebSocket connection.
+     * The ticket is passed in the ticket query parameter of the handshake and expires after a few seconds.
      *
-     * @param session The HTTP session to invalidate
+     * @return ResponseEntity containing the ticket and its lifetime in seconds, or an error message
+     */
+    @PostMapping("/ws-ticket")
+    public ResponseEntity<Object> webSocketTicket() {
+        String username = utils.currentUsername();
+        if (username == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
+        }
+        return ResponseEntity.ok(Map.of("ticket", webSocketTicketService.issue(username),
+                "expiresIn", webSocketTicketService.getTtl().toSeconds()));
+    }
+
+    /**
+     * Logs out the current user by invalidating their session and revoking their refresh token.
+     * Access tokens already issued stay valid until they expire.
+     *
+     * @param request The request containing the refresh token to revoke, optional
+     * @param httpRequest The HTTP request, used to find the session
      * @return ResponseEntity containing logout status message
      */
     @PostMapping("/logout")
-    public ResponseEntity<Map<String, String>> logout(HttpSession session) {
-        System.out.println("Logout");
-        if (session.getAttribute("user") == null) {
+    public ResponseEntity<Map<String, String>> logout(@RequestBody(required = false) RefreshTokenRequest request,
+                                                      HttpServletRequest httpRequest) {
+        log.info("Logout");
+        boolean revoked = request != null && request.getRefreshToken() != null && tokenService.revoke(request.getRefreshToken());
+        HttpSession session = httpRequest.getSession(false);
+        if (session == null || session.getAttribute("user") == null) {
+            if (revoked) {
+                return ResponseEntity.ok(Map.of("message", "Logged out successfully"));
+            }
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "No active session to log out"));
         }
         session.invalidate();
-        System.out.println("Session invalidated");
+        log.info("Session invalidated");
         return ResponseEntity.ok(Map.of("message", "Logged out successfully"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package juancarlos.tfg.teleprompter.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import juancarlos.tfg.teleprompter.enums.ControlCommand;
+import juancarlos.tfg.teleprompter.models.PrompterControlMessage;
+import juancarlos.tfg.teleprompter.services.PrompterControlHub;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+
+/**
+ * WebSocket handler for the live control channel of a teleprompter, at /teleprompter/live/{id}.
+ * Operators and displays exchange speed, position, play/pause and mirror commands,
+ * which are fanned out through the {@link PrompterControlHub}.
+ *
+ * @author Juan Carlos
+ */
+@Component
+@AllArgsConstructor
+@Slf4j
+public class PrompterControlHandler extends TextWebSocketHandler {
+
+    /**
+     * Session attribute holding the ID of the teleprompter the channel belongs to.
+     */
+    public static final String TELEPROMPTER_ID = "teleprompterId";
+
+    /**
+     * Session attribute holding the stored speed of the teleprompter.
+     */
+    public static final String SPEED = "speed";
+
+    private final PrompterControlHub hub;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Subscribes the new session to the channel of its teleprompter.
+     *
+     * @param session The WebSocket session
+     */
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        hub.join(teleprompterId(session), session, (Integer) session.getAttributes().get(SPEED));
+    }
+
+    /**
+     * Parses a command and broadcasts it to the other sessions of the channel.
+     * Malformed commands are ignored.
+     *
+     * @param session The WebSocket session that sent the command
+     * @param message The text message containing the command
+     */
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        PrompterControlMessage command;
+        try {
+            command = objectMapper.readValue(message.getPayload(), PrompterControlMessage.class);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed control message on session {}", session.getId());
+            return;
+        }
+
+        if (command.getCommand() == null || (command.getValue() == null
+                && command.getCommand() != ControlCommand.PLAY && command.getCommand() != ControlCommand.PAUSE)) {
+            log.warn("Ignoring incomplete control message on session {}", session.getId());
+            return;
+        }
+        hub.broadcast(teleprompterId(session), session, command);
+    }
+
+    /**
+     * Unsubscribes the closed session from its channel.
+     *
+     * @param session The WebSocket session
+     * @param status The close status
+     */
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        hub.leave(teleprompterId(session), session);
+    }
+
+    /**
+     * Returns the ID of the teleprompter a session is subscribed to.
+     *
+     * @param session The WebSocket session
+     * @return The ID of the teleprompter
+     */
+    private Long teleprompterId(WebSocketSession session) {
+        return (Long) session.getAttributes().get(TELEPROMPTER_ID);
+    }
+}
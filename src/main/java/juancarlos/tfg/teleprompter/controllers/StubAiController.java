@@ -0,0 +1,142 @@
+package juancarlos.tfg.teleprompter.controllers;
+
+import juancarlos.tfg.teleprompter.services.provider.StubTranslationProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Controller class that imitates the OpenAI chat completions API for offline testing.
+ * Only active with the ai-stub profile, which also points the AI client at it.
+ * Answers with fake translations, sends rate-limit headers, and can be configured to add latency,
+ * fail randomly and throttle, so retries, rate limiting and the circuit breaker can be exercised locally.
+ *
+ * @author Juan Carlos
+ */
+@RestController
+@Profile("ai-stub")
+@RequestMapping("/stub/v1")
+public class StubAiController {
+
+    private static final long WINDOW_MS = 60_000;
+
+    private final ObjectMapper objectMapper;
+    private final StubTranslationProvider stubTranslationProvider;
+    private final long latencyMs;
+    private final double failureRate;
+    private final int requestsPerMinute;
+    private long windowStart = System.currentTimeMillis();
+    private int windowRequests;
+
+    /**
+     * Constructs a new StubAiController.
+     *
+     * @param objectMapper The mapper used to read requests and write responses
+     * @param stubTranslationProvider The local provider that builds the fake answers
+     * @param latencyMs The delay added to every response, in milliseconds
+     * @param failureRate The fraction of requests answered with 503, between 0 and 1
+     * @param requestsPerMinute The number of requests allowed per minute before answering 429
+     */
+    public StubAiController(ObjectMapper objectMapper, StubTranslationProvider stubTranslationProvider,
+                            @Value("${stub.ai.latency-ms:200}") long latencyMs,
+                            @Value("${stub.ai.failure-rate:0}") double failureRate,
+                            @Value("${stub.ai.requests-per-minute:60}") int requestsPerMinute) {
+        this.objectMapper = objectMapper;
+        this.stubTranslationProvider = stubTranslationProvider;
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+        this.requestsPerMinute = requestsPerMinute;
+    }
+
+    /**
+     * Imitates the chat completions endpoint.
+     * Segment requests get one fake translation per segment; other requests get the user message
+     * back with a language marker, either as a single completion or streamed word by word.
+     *
+     * @param body The chat completion request
+     * @return The fake completion, a stream of completion chunks, or a 429/503 error
+     * @throws InterruptedException if the thread is interrupted while simulating latency
+     */
+    @PostMapping("/chat/completions")
+    public ResponseEntity<?> chatCompletions(@RequestBody JsonNode body) throws InterruptedException {
+        Thread.sleep(latencyMs);
+
+        HttpHeaders headers = new HttpHeaders();
+        long remaining = countRequest(headers);
+        if (remaining < 0) {
+            headers.set(HttpHeaders.RETRY_AFTER, "1");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(headers)
+                    .body(Map.of("error", Map.of("message", "Rate limit reached", "type", "requests")));
+        }
+        if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).headers(headers)
+                    .body(Map.of("error", Map.of("message", "Simulated failure", "type", "server_error")));
+        }
+
+        JsonNode messages = body.path("messages");
+        String content = messages.path(messages.size() - 1).path("content").asText();
+        if (body.path("stream").asBoolean()) {
+            return ResponseEntity.ok().headers(headers).contentType(MediaType.TEXT_EVENT_STREAM).body(stream("[stub] " + content));
+        }
+
+        ObjectNode completion = objectMapper.createObjectNode();
+        completion.put("id", "stub").put("object", "chat.completion").put("model", body.path("model").asText());
+        completion.putArray("choices").addObject().put("index", 0).put("finish_reason", "stop")
+                .putObject("message").put("role", "assistant").put("content", stubTranslationProvider.answer(content));
+        return ResponseEntity.ok().headers(headers).body(completion);
+    }
+
+    /**
+     * Counts a request in the current one-minute window and sets the rate-limit headers.
+     *
+     * @param headers The response headers to fill
+     * @return The number of requests left in the window, negative if the limit was exceeded
+     */
+    private synchronized long countRequest(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= WINDOW_MS) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        windowRequests++;
+        long remaining = requestsPerMinute - windowRequests;
+        headers.set("x-ratelimit-limit-requests", String.valueOf(requestsPerMinute));
+        headers.set("x-ratelimit-remaining-requests", String.valueOf(Math.max(0, remaining)));
+        headers.set("x-ratelimit-reset-requests", (WINDOW_MS - (now - windowStart)) + "ms");
+        return remaining;
+    }
+
+    /**
+     * Streams a text as chat completion chunks, one word per event.
+     *
+     * @param text The text to stream
+     * @return The streaming response body
+     */
+    private StreamingResponseBody stream(String text) {
+        return out -> {
+            for (String word : text.split("(?<=\\s)")) {
+                ObjectNode chunk = objectMapper.createObjectNode().put("object", "chat.completion.chunk");
+                chunk.putArray("choices").addObject().put("index", 0).putObject("delta").put("content", word);
+                out.write(("data: " + objectMapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        };
+    }
+}
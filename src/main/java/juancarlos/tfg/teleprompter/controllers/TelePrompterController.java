@@ -1,15 +1,24 @@
 package juancarlos.tfg.teleprompter.controllers;
 
+import juancarlos.tfg.teleprompter.enums.IngestionStatus;
+import juancarlos.tfg.teleprompter.models.IngestionJob;
+import juancarlos.tfg.teleprompter.models.ContentPatch;
+import juancarlos.tfg.teleprompter.models.PrompterPage;
+import juancarlos.tfg.teleprompter.models.TeleprompterSegment;
+import juancarlos.tfg.teleprompter.services.IngestionService;
+import juancarlos.tfg.teleprompter.services.ScriptContentService;
 import juancarlos.tfg.teleprompter.utils.Utils;
 import juancarlos.tfg.teleprompter.models.Teleprompter;
 import juancarlos.tfg.teleprompter.services.TelePrompterService;
-import jakarta.servlet.http.HttpSession;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 
@@ -24,20 +33,39 @@ import java.util.Map;
 @RequestMapping("/teleprompter")
 public class TelePrompterController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final TelePrompterService telePrompterService;
+    private final IngestionService ingestionService;
+    private final ScriptContentService scriptContentService;
     private final Utils utils;
 
+    /**
+     * Restricts the fields bound from form data, so clients cannot set the ID, version or
+     * storage details of the documents they create.
+     *
+     * @param binder The binder of the teleprompter form
+     */
+    @InitBinder("teleprompter")
+    public void initBinder(WebDataBinder binder) {
+        binder.setDisallowedFields("id", "version", "body", "body.*", "blobDigest", "filePath", "user", "user.*");
+    }
+
     /**
      * Creates a new teleprompter document with optional file upload.
+     * In asynchronous mode the uploaded file is stored and a job ID is returned right away,
+     * while the content is extracted in the background.
      *
-     * @param session The HTTP session to verify user authentication
      * @param telePrompter The teleprompter object containing document details and optional file
-     * @return ResponseEntity containing success or error message
+     * @param async Whether the uploaded file should be ingested asynchronously
+     * @return ResponseEntity containing success or error message, or the ingestion job ID
      */
     @PostMapping(value = "/create", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> createTeleprompter(HttpSession session, @ModelAttribute Teleprompter telePrompter) {
+    public ResponseEntity<?> createTeleprompter(@ModelAttribute Teleprompter telePrompter,
+                                                @RequestParam(defaultValue = "false") boolean async) {
         System.out.println("Creating teleprompter...");
-        if (utils.isNotLogged(session)) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
@@ -45,27 +73,59 @@ public class TelePrompterController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid request format"));
         }
 
-        if (telePrompterService.create(telePrompter, (String) session.getAttribute("user"))) {
+        if (async && telePrompter.getFile() != null && !telePrompter.getFile().isEmpty()) {
+            IngestionJob job = ingestionService.submit(telePrompter, utils.currentUsername());
+            if (job == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Prompter already exists"));
+            }
+            if (job.getStatus() == IngestionStatus.FAILED) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", "❌ " + job.getMessage()));
+            }
+            return ResponseEntity.accepted()
+                    .location(URI.create("/teleprompter/jobs/" + job.getId()))
+                    .body(Map.of("message", "Prompter upload accepted", "jobId", job.getId()));
+        }
+
+        if (telePrompterService.create(telePrompter, utils.currentUsername())) {
             return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("message", "Prompter created successfully"));
         } else {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Prompter already exists"));
         }
     }
 
+    /**
+     * Retrieves the status of an asynchronous upload ingestion job.
+     *
+     * @param id The ID of the ingestion job
+     * @return ResponseEntity containing the job status or error message
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<?> getIngestionJob(@PathVariable String id) {
+        if (utils.isNotLogged()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
+        }
+
+        IngestionJob job = ingestionService.getJob(id, utils.currentUsername());
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Job not found"));
+        }
+
+        return ResponseEntity.ok(job);
+    }
+
     /**
      * Updates an existing teleprompter document.
      * @param id The ID of the teleprompter to update
      * @param telePrompter The teleprompter object containing updated information
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing success or error message
      */
     @PatchMapping("/{id}")
-    public ResponseEntity<?> updateTeleprompter(@PathVariable Long id, @RequestBody Teleprompter telePrompter, HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> updateTeleprompter(@PathVariable Long id, @RequestBody Teleprompter telePrompter) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        if (telePrompterService.update(id, telePrompter, (String) session.getAttribute("user"))) {
+        if (telePrompterService.update(id, telePrompter, utils.currentUsername())) {
             return ResponseEntity.ok(Map.of("message", "Prompter updated successfully"));
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
@@ -73,39 +133,86 @@ public class TelePrompterController {
     }
 
     /**
-     * Retrieves all teleprompter documents for the current user.
+     * Applies text operations to the script of a teleprompter document.
+     * The request carries the document version the edits were made against and a list of
+     * insert and delete operations, so autosaves only send what changed.
+     *
+     * @param id The ID of the teleprompter to patch
+     * @param patch The version and the operations to apply
+     * @return ResponseEntity containing the new version, or error message
+     */
+    @PatchMapping("/{id}/content")
+    public ResponseEntity<?> patchTeleprompterContent(@PathVariable Long id, @RequestBody ContentPatch patch) {
+        if (utils.isNotLogged()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
+        }
+
+        Teleprompter telePrompter;
+        try {
+            telePrompter = telePrompterService.patchContent(id, patch, utils.currentUsername());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ " + e.getMessage()));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "❌ Prompter was modified by another session"));
+        }
+
+        if (telePrompter == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
+        }
+        return ResponseEntity.ok(Map.of("message", "Prompter updated successfully", "version", telePrompter.getVersion()));
+    }
+
+    /**
+     * Retrieves one page of the teleprompter documents of the current user.
+     * The body is the list of documents; the total count and the cursor of the next page
+     * are returned in the X-Total-Count and X-Next-Cursor headers.
      *
-     * @param session The HTTP session to verify user authentication
+     * @param size The maximum number of documents to return
+     * @param cursor The cursor of the page to return, as received in X-Next-Cursor
+     * @param sort The property to sort by: id, name or createdDate
+     * @param direction The sort direction: asc or desc
      * @return ResponseEntity containing a list of teleprompter documents or error message
      */
     @GetMapping
-    public ResponseEntity<?> getTeleprompters(HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> getTeleprompters(@RequestParam(defaultValue = "50") int size,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(defaultValue = "id") String sort,
+                                              @RequestParam(defaultValue = "asc") String direction) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        List<Teleprompter> prompters = telePrompterService.getPrompters((String) session.getAttribute("user"));
-        if (prompters.isEmpty()) {
+        PrompterPage page;
+        try {
+            page = telePrompterService.getPrompters(utils.currentUsername(), size, cursor, sort, direction);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid pagination parameters"));
+        }
+
+        if (page.getTotal() == 0) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ No prompters found"));
         }
 
-        return ResponseEntity.ok(prompters);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(TOTAL_COUNT_HEADER, String.valueOf(page.getTotal()));
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 
     /**
      * Retrieves a specific teleprompter document by ID.
      *
      * @param id The ID of the teleprompter to retrieve
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing the teleprompter document or error message
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getTeleprompterById(@PathVariable Long id, HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> getTeleprompterById(@PathVariable Long id) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        Teleprompter telePrompter = telePrompterService.getPrompterById(id, (String) session.getAttribute("user"));
+        Teleprompter telePrompter = telePrompterService.getPrompterWithContent(id, utils.currentUsername());
         if (telePrompter == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
         }
@@ -116,20 +223,48 @@ public class TelePrompterController {
         return ResponseEntity.ok(telePrompter);
     }
 
+    /**
+     * Retrieves a range of segments of the script of a teleprompter document.
+     * Lets live prompting clients start scrolling after the first segment and fetch ahead as they go.
+     * The total number of segments is returned in the X-Total-Count header.
+     *
+     * @param id The ID of the teleprompter document
+     * @param from The position of the first segment to return
+     * @param count The number of segments to return
+     * @return ResponseEntity containing the list of segments or error message
+     */
+    @GetMapping("/{id}/segments")
+    public ResponseEntity<?> getTeleprompterSegments(@PathVariable Long id,
+                                                     @RequestParam(defaultValue = "0") int from,
+                                                     @RequestParam(defaultValue = "5") int count) {
+        if (utils.isNotLogged()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
+        }
+
+        Teleprompter telePrompter = telePrompterService.getPrompterWithContent(id, utils.currentUsername());
+        if (telePrompter == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
+        }
+
+        List<TeleprompterSegment> segments = scriptContentService.split(telePrompter.getContent());
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(segments.size()))
+                .body(scriptContentService.slice(segments, from, count));
+    }
+
     /**
      * Downloads the file associated with a teleprompter document.
      *
      * @param id The ID of the teleprompter document
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing the file for download or error message
      */
     @GetMapping("/download/{id}")
-    public ResponseEntity<?> downloadTeleprompterFile(@PathVariable Long id, HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> downloadTeleprompterFile(@PathVariable Long id) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        Teleprompter telePrompter = telePrompterService.getPrompterById(id, (String) session.getAttribute("user"));
+        Teleprompter telePrompter = telePrompterService.getPrompterById(id, utils.currentUsername());
         if (telePrompter == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
         }
@@ -141,16 +276,15 @@ public class TelePrompterController {
      * Deletes a teleprompter document.
      *
      * @param id The ID of the teleprompter to delete
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing success or error message
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteTeleprompter(@PathVariable Long id, HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> deleteTeleprompter(@PathVariable Long id) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        if (telePrompterService.delete(id, (String) session.getAttribute("user"))) {
+        if (telePrompterService.delete(id, utils.currentUsername())) {
             return ResponseEntity.ok(Map.of("message", "Prompter deleted successfully"));
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ Prompter not found"));
@@ -4,82 +4,171 @@ import juancarlos.tfg.teleprompter.utils.Utils;
 import juancarlos.tfg.teleprompter.models.TextTranslationRequest;
 import juancarlos.tfg.teleprompter.models.TranslationResponse;
 import juancarlos.tfg.teleprompter.models.FileTranslationRequest;
-import juancarlos.tfg.teleprompter.services.AiApiCallService;
 import juancarlos.tfg.teleprompter.services.FileTranslatorService;
-import jakarta.servlet.http.HttpSession;
+import juancarlos.tfg.teleprompter.services.StreamingTranslationService;
+import juancarlos.tfg.teleprompter.services.TranslationMemoryService;
+import juancarlos.tfg.teleprompter.services.UserQuotaService;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
 /**
  * Controller class that handles translation operations for both text and files.
- * Provides endpoints for translating text content and file contents using AI services.
+ * Provides endpoints for translating text content and file contents using AI services,
+ * either as a single response or streamed as Server-Sent Events.
  *
  * @author Juan Carlos
  */
 @RestController
 @AllArgsConstructor
+@Slf4j
 @RequestMapping("/translator")
 public class TranslatorController {
 
-    private final AiApiCallService aiApiCallService;
+    private final TranslationMemoryService translationMemoryService;
     private final FileTranslatorService fileTranslatorService;
+    private final StreamingTranslationService streamingTranslationService;
+    private final UserQuotaService userQuotaService;
     private final Utils utils;
 
     /**
      * Translates text content to the specified target language.
+     * Sentences translated before are reused from the translation memory.
      *
-     * @param session The HTTP session to verify user authentication
      * @param request The translation request containing text and target language
      * @return ResponseEntity containing the translation result or error message
      */
     @PostMapping("/text")
-    public ResponseEntity<?> textTranslate(HttpSession session, @RequestBody TextTranslationRequest request) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> textTranslate(@RequestBody TextTranslationRequest request) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        System.out.println("Translating text...");
-        TranslationResponse result = aiApiCallService.translateText(request);
-        if (result.getError() == null) {
-            System.out.println("Text translated successfully");
-            return ResponseEntity.ok(result);
-        } else {
-            System.out.println("Error translating text: " + result.getError());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+        if (request.getText() == null || request.getTargetLanguage() == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Invalid request format"));
+        }
+
+        String userName = utils.currentUsername();
+        if (!userQuotaService.tryAcquire(userName)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("message", "❌ Too many translations in progress"));
+        }
+
+        try {
+            log.info("Translating text");
+            TranslationResponse result = translationMemoryService.translate(request.getText(), request.getTargetLanguage(), userName);
+            if (result.getError() == null) {
+                log.info("Text translated successfully");
+                return ResponseEntity.ok(result);
+            } else {
+                log.warn("Error translating text: {}", result.getError());
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+            }
+        } finally {
+            userQuotaService.release(userName);
         }
     }
 
+    /**
+     * Streams the translation of text content as Server-Sent Events while it is generated.
+     * Errors found before the translation starts are sent as a single "error" event.
+     *
+     * @param request The translation request containing text and target language
+     * @return ResponseEntity containing the event stream
+     */
+    @PostMapping(value = "/text/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> textTranslateStream(@RequestBody TextTranslationRequest request) {
+        if (utils.isNotLogged()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(streamingTranslationService.error("❌ No active session"));
+        }
+
+        if (request.getText() == null || request.getTargetLanguage() == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(streamingTranslationService.error("❌ Invalid request format"));
+        }
+
+        String userName = utils.currentUsername();
+        if (!userQuotaService.tryAcquire(userName)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(streamingTranslationService.error("❌ Too many translations in progress"));
+        }
+
+        return ResponseEntity.ok(streamingTranslationService.stream(request.getText(), request.getTargetLanguage(),
+                () -> userQuotaService.release(userName)));
+    }
+
     /**
      * Translates the contents of a file to the specified target language.
      *
-     * @param session The HTTP session to verify user authentication
      * @param request The translation request containing file and target language
      * @return ResponseEntity containing the translation result or error message
      */
     @PostMapping(value = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> fileTranslate(HttpSession session, @ModelAttribute FileTranslationRequest request) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<?> fileTranslate(@ModelAttribute FileTranslationRequest request) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
+        String userName = utils.currentUsername();
+        if (!userQuotaService.tryAcquire(userName)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("message", "❌ Too many translations in progress"));
+        }
+
         try {
-            System.out.println("Translating file...");
-            TranslationResponse result = fileTranslatorService.translateFile(request, (String) session.getAttribute("user"));
+            log.info("Translating file");
+            TranslationResponse result = fileTranslatorService.translateFile(request, userName);
             if (result.getError() == null) {
-                System.out.println("File translated successfully");
+                log.info("File translated successfully");
                 return ResponseEntity.ok(result);
             } else {
-                System.out.println("Error translating file: " + result.getError());
+                log.warn("Error translating file: {}", result.getError());
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Error processing file for translation", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "❌ Error processing file: " + e.getMessage()));
+        } finally {
+            userQuotaService.release(userName);
+        }
+    }
+
+    /**
+     * Streams the translation of the contents of a file as Server-Sent Events while it is generated.
+     * Errors found before the translation starts are sent as a single "error" event.
+     *
+     * @param request The translation request containing file and target language
+     * @return ResponseEntity containing the event stream
+     */
+    @PostMapping(value = "/file/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> fileTranslateStream(@ModelAttribute FileTranslationRequest request) {
+        if (utils.isNotLogged()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(streamingTranslationService.error("❌ No active session"));
+        }
+
+        String userName = utils.currentUsername();
+        if (!userQuotaService.tryAcquire(userName)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(streamingTranslationService.error("❌ Too many translations in progress"));
+        }
+
+        boolean streaming = false;
+        try {
+            String content = fileTranslatorService.extractContent(request, userName);
+            if (content == null) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(streamingTranslationService.error("❌ Could not extract content from file"));
+            }
+            streaming = true;
+            return ResponseEntity.ok(streamingTranslationService.stream(content, request.getTargetLanguage(),
+                    () -> userQuotaService.release(userName)));
+        } catch (Exception e) {
+            log.error("Error processing file for streaming translation", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(streamingTranslationService.error("❌ Error processing file: " + e.getMessage()));
+        } finally {
+            if (!streaming) {
+                userQuotaService.release(userName);
+            }
         }
     }
 }
\ No newline at end of file
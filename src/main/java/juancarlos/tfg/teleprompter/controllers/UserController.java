@@ -1,10 +1,9 @@
 package juancarlos.tfg.teleprompter.controllers;
 
 import juancarlos.tfg.teleprompter.utils.Utils;
-import juancarlos.tfg.teleprompter.enums.UserRole;
+import juancarlos.tfg.teleprompter.models.CurrentPrincipal;
 import juancarlos.tfg.teleprompter.models.User;
 import juancarlos.tfg.teleprompter.services.UserService;
-import jakarta.servlet.http.HttpSession;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -30,17 +29,16 @@ public class UserController {
     /**
      * Creates a new user in the system. Only accessible by administrators.
      *
-     * @param session The HTTP session to verify user authentication
      * @param user The user object containing user details
      * @return ResponseEntity containing success or error message
      */
     @PostMapping("/create")
-    public ResponseEntity<Map<String, String>> createUser(HttpSession session, @RequestBody User user) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<Map<String, String>> createUser(@RequestBody User user) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        if (!userService.loadUserByUsername(session.getAttribute("user").toString()).getRole().equals(UserRole.ADMIN.toString())) {
+        if (!utils.isAdmin()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No enough permissions"));
         }
 
@@ -79,16 +77,15 @@ public class UserController {
     /**
      * Retrieves a user by their ID. Only accessible by administrators.
      *
-     * @param session The HTTP session to verify user authentication
      * @param id The ID of the user to retrieve
      * @return ResponseEntity containing the user object or null if not found
      */
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUser(HttpSession session, @PathVariable("id") Long id) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<User> getUser(@PathVariable("id") Long id) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
-        if (!userService.loadUserByUsername(session.getAttribute("user").toString()).getRole().equals(UserRole.ADMIN.toString())) {
+        if (!utils.isAdmin()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
         User user = userService.loadUserById(id);
@@ -101,15 +98,14 @@ public class UserController {
     /**
      * Retrieves all users in the system. Only accessible by administrators.
      *
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing a list of all users
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers(HttpSession session) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<List<User>> getAllUsers() {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
-        if (!userService.loadUserByUsername(session.getAttribute("user").toString()).getRole().equals(UserRole.ADMIN.toString())) {
+        if (!utils.isAdmin()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         }
         return ResponseEntity.status(HttpStatus.OK).body(userService.loadAllUsers());
@@ -148,14 +144,13 @@ public class UserController {
      * Resets a user's password using a reset token or current session.
      *
      * @param request The user object containing reset token and new password
-     * @param session The HTTP session to verify user authentication
      * @return ResponseEntity containing the status of the password reset
      */
     @PostMapping("/reset-password")
-    public ResponseEntity<Map<String, String>> resetPassword(@RequestBody User request, HttpSession session) {
-        boolean isLogged = !utils.isNotLogged(session);
+    public ResponseEntity<Map<String, String>> resetPassword(@RequestBody User request) {
+        boolean isLogged = !utils.isNotLogged();
         if(isLogged) {
-            request.setUsername(session.getAttribute("user").toString());
+            request.setUsername(utils.currentUsername());
         }
         if (request.getToken() == null && !isLogged) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ No Token provided"));
@@ -181,18 +176,17 @@ public class UserController {
     /**
      * Deletes a user from the system. Can be performed by administrators or the user themselves.
      *
-     * @param session The HTTP session to verify user authentication
      * @param id The ID of the user to delete
      * @param request The user object containing password for self-deletion
      * @return ResponseEntity containing the status of the deletion operation
      */
     @PostMapping("/delete/{id}")
-    public ResponseEntity<Map<String, String>> deleteUser(HttpSession session, @PathVariable("id") Long id, @RequestBody(required = false) User request) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<Map<String, String>> deleteUser(@PathVariable("id") Long id, @RequestBody(required = false) User request) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        User currentUser = userService.loadUserByUsername(session.getAttribute("user").toString());
+        CurrentPrincipal currentUser = utils.currentPrincipal();
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ Invalid session user"));
         }
@@ -201,7 +195,7 @@ public class UserController {
             if (request == null || request.getPassword() == null) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "❌ Password required for self-deletion"));
             }
-            if (!userService.verifyPassword(currentUser, request.getPassword())) {
+            if (!userService.verifyPassword(userService.loadUserById(currentUser.getId()), request.getPassword())) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ Invalid password"));
             }
             id = currentUser.getId();
@@ -212,7 +206,7 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "❌ User not found"));
         }
 
-        boolean isAdmin = currentUser.getRole().equals(UserRole.ADMIN.toString());
+        boolean isAdmin = currentUser.isAdmin();
         boolean isSelf = currentUser.getId().equals(targetUser.getId());
 
         if (isAdmin || isSelf) {
@@ -231,17 +225,16 @@ public class UserController {
     /**
      * Updates the current user's profile information.
      *
-     * @param session The HTTP session to verify user authentication
      * @param user The user object containing updated information
      * @return ResponseEntity containing the status of the update operation
      */
     @PatchMapping("/update")
-    public ResponseEntity<Map<String, String>> updateUser(HttpSession session, @RequestBody User user) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<Map<String, String>> updateUser(@RequestBody User user) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        User currentUser = userService.loadUserByUsername(session.getAttribute("user").toString());
+        User currentUser = userService.loadUserByUsername(utils.currentUsername());
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ Invalid session user"));
         }
@@ -273,23 +266,21 @@ public class UserController {
     /**
      * Updates a user's profile information by ID. Only accessible by administrators.
      *
-     * @param session The HTTP session to verify user authentication
      * @param id The ID of the user to update
      * @param user The user object containing updated information
      * @return ResponseEntity containing the status of the update operation
      */
     @PatchMapping("/update/{id}")
-    public ResponseEntity<Map<String, String>> updateUserById(HttpSession session, @PathVariable("id") Long id, @RequestBody User user) {
-        if (utils.isNotLogged(session)) {
+    public ResponseEntity<Map<String, String>> updateUserById(@PathVariable("id") Long id, @RequestBody User user) {
+        if (utils.isNotLogged()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No active session"));
         }
 
-        User currentUser = userService.loadUserByUsername(session.getAttribute("user").toString());
-        if (currentUser == null) {
+        if (utils.currentPrincipal() == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ Invalid session user"));
         }
 
-        if (!currentUser.getRole().equals(UserRole.ADMIN.toString())) {
+        if (!utils.isAdmin()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "❌ No enough permissions"));
         }
 
@@ -0,0 +1,23 @@
+package juancarlos.tfg.teleprompter.enums;
+
+/**
+ * Enumeration representing the states of a circuit breaker.
+ *
+ * @author Juan Carlos
+ */
+public enum CircuitState {
+    /**
+     * Requests flow normally and failures are counted.
+     */
+    CLOSED,
+
+    /**
+     * Requests are rejected without calling the upstream service.
+     */
+    OPEN,
+
+    /**
+     * A single probe request is allowed to test whether the upstream service recovered.
+     */
+    HALF_OPEN
+}
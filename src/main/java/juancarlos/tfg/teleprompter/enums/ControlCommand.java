@@ -0,0 +1,33 @@
+package juancarlos.tfg.teleprompter.enums;
+
+/**
+ * Enumeration representing the commands sent over a live prompter control channel.
+ *
+ * @author Juan Carlos
+ */
+public enum ControlCommand {
+    /**
+     * Sets the scroll speed.
+     */
+    SPEED,
+
+    /**
+     * Jumps to a scroll position.
+     */
+    POSITION,
+
+    /**
+     * Starts scrolling.
+     */
+    PLAY,
+
+    /**
+     * Stops scrolling.
+     */
+    PAUSE,
+
+    /**
+     * Turns mirrored display on (value 1) or off (value 0).
+     */
+    MIRROR
+}
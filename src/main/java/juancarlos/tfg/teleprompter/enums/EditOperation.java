@@ -0,0 +1,18 @@
+package juancarlos.tfg.teleprompter.enums;
+
+/**
+ * Enumeration representing the kinds of text operation accepted by a script content patch.
+ *
+ * @author Juan Carlos
+ */
+public enum EditOperation {
+    /**
+     * Inserts text at an offset.
+     */
+    INSERT,
+
+    /**
+     * Deletes a number of characters starting at an offset.
+     */
+    DELETE
+}
@@ -0,0 +1,28 @@
+package juancarlos.tfg.teleprompter.enums;
+
+/**
+ * Enumeration representing the states of an asynchronous upload ingestion job.
+ *
+ * @author Juan Carlos
+ */
+public enum IngestionStatus {
+    /**
+     * The file has been stored and the job is waiting for a worker.
+     */
+    QUEUED,
+
+    /**
+     * A worker is extracting the content of the file.
+     */
+    EXTRACTING,
+
+    /**
+     * The content was extracted and saved to the teleprompter document.
+     */
+    COMPLETED,
+
+    /**
+     * The job could not be completed.
+     */
+    FAILED
+}
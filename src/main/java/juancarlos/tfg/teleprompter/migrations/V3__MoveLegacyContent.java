@@ -0,0 +1,89 @@
+package juancarlos.tfg.teleprompter.migrations;
+
+import juancarlos.tfg.teleprompter.models.TeleprompterContent;
+import juancarlos.tfg.teleprompter.services.ScriptContentService;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Schema migration that moves script text from the old teleprompter.content column
+ * into the compressed teleprompter_content table, then drops the column.
+ * Rows are read in small batches; the whole move runs in the migration transaction, so a
+ * failure leaves every document with its text in the old column and the migration is retried
+ * on the next start.
+ *
+ * @author Juan Carlos
+ */
+@Component
+@Slf4j
+public class V3__MoveLegacyContent extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Moves the content of every document and drops the old column.
+     *
+     * @param context The migration context with the connection to use
+     * @throws SQLException if a statement fails
+     */
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        int migrated = 0;
+        try (PreparedStatement select = connection.prepareStatement("select id, content from teleprompter where content is not null limit " + BATCH_SIZE);
+             PreparedStatement insert = connection.prepareStatement(
+                     "insert into teleprompter_content (data, uncompressed_length, checksum, codec) values (?, ?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement attach = connection.prepareStatement("update teleprompter set content_id = ?, content = null where id = ?")) {
+            int moved;
+            do {
+                moved = 0;
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        move(rows.getLong("id"), rows.getString("content"), insert, attach);
+                        moved++;
+                    }
+                }
+                migrated += moved;
+            } while (moved == BATCH_SIZE);
+        }
+
+        try (Statement drop = connection.createStatement()) {
+            drop.execute("alter table teleprompter drop column content");
+        }
+        log.info("Moved the content of {} teleprompters to compressed storage", migrated);
+    }
+
+    /**
+     * Compresses the text of a document into a new content row and points the document to it.
+     *
+     * @param id The ID of the document
+     * @param text The script text
+     * @param insert The statement that inserts a content row
+     * @param attach The statement that points a document to its content row
+     * @throws SQLException if a statement fails
+     */
+    private void move(long id, String text, PreparedStatement insert, PreparedStatement attach) throws SQLException {
+        TeleprompterContent content = new TeleprompterContent();
+        ScriptContentService.encode(content, text);
+        insert.setBytes(1, content.getData());
+        insert.setInt(2, content.getUncompressedLength());
+        insert.setLong(3, content.getChecksum());
+        insert.setString(4, content.getCodec());
+        insert.executeUpdate();
+        try (ResultSet keys = insert.getGeneratedKeys()) {
+            keys.next();
+            attach.setLong(1, keys.getLong(1));
+        }
+        attach.setLong(2, id);
+        attach.executeUpdate();
+    }
+}
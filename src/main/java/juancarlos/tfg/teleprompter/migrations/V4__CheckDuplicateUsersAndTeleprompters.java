@@ -0,0 +1,71 @@
+package juancarlos.tfg.teleprompter.migrations;
+
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema migration that checks the data before V5 adds its unique constraints.
+ * The first release did not enforce unique usernames, emails or document names per user,
+ * so older databases may contain duplicates. Instead of failing halfway through V5, the
+ * migration stops here and reports them; they must be merged or renamed by hand before
+ * the application is started again.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class V4__CheckDuplicateUsersAndTeleprompters extends BaseJavaMigration {
+
+    private static final int MAX_REPORTED = 20;
+
+    private static final String DUPLICATE_USERNAMES =
+            "select username, count(*) from users where username is not null group by username having count(*) > 1";
+    private static final String DUPLICATE_EMAILS =
+            "select email, count(*) from users where email is not null group by email having count(*) > 1";
+    private static final String DUPLICATE_TELEPROMPTERS =
+            "select concat(user_id, '/', name), count(*) from teleprompter where user_id is not null group by user_id, name having count(*) > 1";
+
+    /**
+     * Fails the migration if any of the values made unique by V5 is duplicated.
+     *
+     * @param context The migration context with the connection to use
+     * @throws SQLException if a query fails
+     * @throws FlywayException if duplicates are found
+     */
+    @Override
+    public void migrate(Context context) throws SQLException {
+        List<String> duplicates = new ArrayList<>();
+        try (Statement statement = context.getConnection().createStatement()) {
+            collect(statement, DUPLICATE_USERNAMES, "username", duplicates);
+            collect(statement, DUPLICATE_EMAILS, "email", duplicates);
+            collect(statement, DUPLICATE_TELEPROMPTERS, "teleprompter user_id/name", duplicates);
+        }
+        if (!duplicates.isEmpty()) {
+            throw new FlywayException("Resolve these duplicates before adding the unique constraints of V5: " + String.join(", ", duplicates));
+        }
+    }
+
+    /**
+     * Runs a duplicate query and adds what it finds to the report.
+     *
+     * @param statement The statement used to run the query
+     * @param query The query, returning the duplicated value and its count
+     * @param label The name of the duplicated value in the report
+     * @param duplicates The report
+     * @throws SQLException if the query fails
+     */
+    private void collect(Statement statement, String query, String label, List<String> duplicates) throws SQLException {
+        try (ResultSet rows = statement.executeQuery(query)) {
+            while (rows.next() && duplicates.size() < MAX_REPORTED) {
+                duplicates.add(label + " '" + rows.getString(1) + "' (" + rows.getLong(2) + " rows)");
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data transfer object for a provider-independent chat completion request.
+ * The model is not part of the request: every translation provider fills in its own.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class ChatCompletionRequest {
+    /**
+     * The messages of the conversation, in order.
+     */
+    private List<ChatMessage> messages;
+
+    /**
+     * Whether the model must answer with a JSON object.
+     */
+    private boolean jsonResponse;
+}
@@ -0,0 +1,23 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data transfer object for a single message of a chat completion request.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class ChatMessage {
+    /**
+     * The author of the message: system, user or assistant.
+     */
+    private String role;
+
+    /**
+     * The text of the message.
+     */
+    private String content;
+}
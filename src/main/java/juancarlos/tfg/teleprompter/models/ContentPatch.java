@@ -0,0 +1,23 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data transfer object for an incremental update of the script text of a teleprompter document.
+ *
+ * @author Juan Carlos
+ */
+@Data
+public class ContentPatch {
+    /**
+     * Version of the document the operations were made against.
+     */
+    private Long version;
+
+    /**
+     * Operations to apply, in order.
+     */
+    private List<TextEdit> operations;
+}
@@ -0,0 +1,44 @@
+package juancarlos.tfg.teleprompter.models;
+
+import juancarlos.tfg.teleprompter.enums.UserRole;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The resolved identity of the user making a request.
+ * Holds only what authorization checks need, so it can be cached without keeping full user entities in memory.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class CurrentPrincipal {
+    /**
+     * Unique identifier of the user.
+     */
+    private Long id;
+
+    /**
+     * Username of the user.
+     */
+    private String username;
+
+    /**
+     * Role of the user in the system.
+     */
+    private String role;
+
+    /**
+     * Flag indicating if the user's email is verified.
+     */
+    private boolean verified;
+
+    /**
+     * Checks if the user is an administrator.
+     *
+     * @return true if the user has the administrator role, false otherwise
+     */
+    public boolean isAdmin() {
+        return UserRole.ADMIN.toString().equals(role);
+    }
+}
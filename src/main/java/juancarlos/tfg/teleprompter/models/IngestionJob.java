@@ -0,0 +1,87 @@
+package juancarlos.tfg.teleprompter.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import juancarlos.tfg.teleprompter.enums.IngestionStatus;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Data transfer object representing an asynchronous upload ingestion job.
+ * Tracks the extraction progress of a file uploaded to a teleprompter document.
+ *
+ * @author Juan Carlos
+ */
+@Data
+public class IngestionJob {
+    /**
+     * Unique identifier of the job.
+     */
+    private final String id;
+
+    /**
+     * Username of the user who submitted the job.
+     */
+    @JsonIgnore
+    private final String username;
+
+    /**
+     * ID of the teleprompter document that receives the extracted content.
+     */
+    private volatile Long teleprompterId;
+
+    /**
+     * Current state of the job.
+     */
+    private volatile IngestionStatus status = IngestionStatus.QUEUED;
+
+    /**
+     * Extraction progress as a percentage.
+     */
+    private volatile int progress;
+
+    /**
+     * Error message if the job failed.
+     */
+    private volatile String message;
+
+    /**
+     * Moment when the job was submitted.
+     */
+    private final Instant createdAt = Instant.now();
+
+    /**
+     * Moment when the job completed or failed.
+     */
+    private volatile Instant finishedAt;
+
+    /**
+     * Marks the job as completed.
+     */
+    public void complete() {
+        progress = 100;
+        status = IngestionStatus.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Marks the job as failed with the given message.
+     *
+     * @param message The reason of the failure
+     */
+    public void fail(String message) {
+        this.message = message;
+        status = IngestionStatus.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Checks whether the job has finished, either successfully or not.
+     *
+     * @return true if the job completed or failed, false otherwise
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+}
@@ -0,0 +1,27 @@
+package juancarlos.tfg.teleprompter.models;
+
+import juancarlos.tfg.teleprompter.enums.ControlCommand;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data transfer object for a command sent over a live prompter control channel.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrompterControlMessage {
+    /**
+     * The command to apply.
+     */
+    private ControlCommand command;
+
+    /**
+     * The argument of the command: the speed, the position, or 1/0 for mirroring.
+     * Not used by play and pause.
+     */
+    private Integer value;
+}
@@ -0,0 +1,30 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data transfer object for one page of a user's teleprompter document list.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class PrompterPage {
+    /**
+     * The documents of the page.
+     */
+    private List<TeleprompterSummary> items;
+
+    /**
+     * Opaque cursor to request the next page, null if this is the last page.
+     */
+    private String nextCursor;
+
+    /**
+     * Total number of documents owned by the user.
+     */
+    private long total;
+}
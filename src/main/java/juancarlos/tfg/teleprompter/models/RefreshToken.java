@@ -0,0 +1,56 @@
+package juancarlos.tfg.teleprompter.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Entity class representing an issued refresh token.
+ * Only a hash of the token is stored. Every refresh consumes the token and issues a new one
+ * in the same family; presenting a consumed token again revokes the whole family.
+ *
+ * @author Juan Carlos
+ */
+@Entity
+@Data
+@Table(name = "refresh_token", indexes = {@Index(columnList = "familyId"), @Index(columnList = "expiresAt"), @Index(columnList = "userId")})
+public class RefreshToken {
+
+    /**
+     * Unique identifier of the token.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Hex-encoded SHA-256 hash of the token.
+     */
+    @Column(nullable = false, unique = true, length = 64)
+    private String tokenHash;
+
+    /**
+     * Identifier shared by all the tokens issued from the same login.
+     */
+    @Column(nullable = false, length = 36)
+    private String familyId;
+
+    /**
+     * Identifier of the token owner. Usernames can be taken again after an account is
+     * deleted, ids cannot, so a token never passes to another account.
+     */
+    @Column(nullable = false)
+    private Long userId;
+
+    /**
+     * Time after which the token is no longer accepted.
+     */
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Time when the token was consumed or revoked, null while it can still be used.
+     */
+    private Instant usedAt;
+}
@@ -0,0 +1,16 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.Data;
+
+/**
+ * Data transfer object for refresh and logout requests.
+ *
+ * @author Juan Carlos
+ */
+@Data
+public class RefreshTokenRequest {
+    /**
+     * The refresh token issued on login or on the previous refresh.
+     */
+    private String refreshToken;
+}
@@ -0,0 +1,42 @@
+package juancarlos.tfg.teleprompter.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Entity class representing a lease on a scheduled task.
+ * A task runs only on the node that holds an unexpired lease, so jobs scheduled on
+ * every node of a cluster are executed once.
+ *
+ * @author Juan Carlos
+ */
+@Entity
+@Data
+@Table(name = "scheduler_lock")
+public class SchedulerLock {
+
+    /**
+     * Name of the scheduled task.
+     */
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    /**
+     * Time until which the lease is held.
+     */
+    @Column(nullable = false)
+    private Instant lockedUntil;
+
+    /**
+     * Time when the lease was taken.
+     */
+    private Instant lockedAt;
+
+    /**
+     * Node that holds the lease.
+     */
+    private String lockedBy;
+}
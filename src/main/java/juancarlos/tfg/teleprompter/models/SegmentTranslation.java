@@ -0,0 +1,30 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data transfer object for the translation of a list of text segments.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class SegmentTranslation {
+    /**
+     * The translated segments, in the same order as the source segments.
+     */
+    private List<String> segments;
+
+    /**
+     * The detected language of the source segments.
+     */
+    private String originalLanguage;
+
+    /**
+     * The provider and model that produced the translation, or null if it must not be stored.
+     */
+    private String cacheScope;
+}
@@ -0,0 +1,41 @@
+package juancarlos.tfg.teleprompter.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Entity class representing a file in the content-addressed upload store.
+ * Each distinct file content is stored once, identified by its SHA-256 digest,
+ * and counts the teleprompter documents that reference it.
+ *
+ * @author Juan Carlos
+ */
+@Entity
+@Data
+@Table(name = "stored_blob")
+public class StoredBlob {
+
+    /**
+     * Hex-encoded SHA-256 digest of the file content.
+     */
+    @Id
+    @Column(length = 64)
+    private String digest;
+
+    /**
+     * Size of the file in bytes.
+     */
+    private long size;
+
+    /**
+     * Number of teleprompter documents referencing the file.
+     */
+    private int referenceCount;
+
+    /**
+     * Date when the file was first stored.
+     */
+    private LocalDate createdDate;
+}
@@ -1,7 +1,10 @@
 package juancarlos.tfg.teleprompter.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDate;
@@ -15,7 +18,7 @@ import java.time.LocalDate;
  */
 @Entity
 @Data
-@Table(name = "teleprompter")
+@Table(name = "teleprompter", uniqueConstraints = @UniqueConstraint(name = "uk_teleprompter_user_name", columnNames = {"user_id", "name"}))
 public class Teleprompter {
 
     /**
@@ -37,11 +40,30 @@ public class Teleprompter {
     private String description;
 
     /**
-     * Content of the teleprompter document stored as LONGTEXT.
+     * Text content of the teleprompter document.
+     * Not persisted here; filled from the compressed body only when the script is requested.
      */
-    @Column(columnDefinition = "LONGTEXT")
+    @Transient
     private String content;
 
+    /**
+     * Compressed script text, stored in its own table and loaded lazily.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "content_id")
+    private TeleprompterContent body;
+
+    /**
+     * Version of the document, used to detect concurrent edits.
+     * Sent to clients but never read from request bodies.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     /**
      * Date when the document was created.
      */
@@ -64,6 +86,12 @@ public class Teleprompter {
     @Column(nullable = false)
     private String fileName;
 
+    /**
+     * SHA-256 digest of the file in the upload store, null for files stored before deduplication.
+     */
+    @Column(length = 64)
+    private String blobDigest;
+
     /**
      * Temporary storage for uploaded file.
      */
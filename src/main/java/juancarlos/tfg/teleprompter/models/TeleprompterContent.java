@@ -0,0 +1,48 @@
+package juancarlos.tfg.teleprompter.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Entity class holding the script text of a teleprompter document.
+ * The text is stored Deflate-compressed in its own table, together with its uncompressed length
+ * and a CRC32 checksum, and is only loaded when the script itself is needed.
+ *
+ * @author Juan Carlos
+ */
+@Entity
+@Data
+@Table(name = "teleprompter_content")
+public class TeleprompterContent {
+
+    /**
+     * Unique identifier of the content.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Compressed UTF-8 bytes of the script text.
+     */
+    @ToString.Exclude
+    @Column(nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] data;
+
+    /**
+     * Length in bytes of the uncompressed UTF-8 text.
+     */
+    private int uncompressedLength;
+
+    /**
+     * CRC32 checksum of the uncompressed UTF-8 text.
+     */
+    private long checksum;
+
+    /**
+     * Compression codec used for the data.
+     */
+    @Column(nullable = false, length = 16)
+    private String codec;
+}
@@ -0,0 +1,33 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data transfer object representing a fixed-size chunk of the script text of a teleprompter document.
+ * Segments let live prompting clients fetch the script incrementally instead of all at once.
+ * They are computed from the stored script on request and never persisted.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TeleprompterSegment {
+
+    /**
+     * Position of the segment within the script, starting at 0.
+     */
+    private int seq;
+
+    /**
+     * Offset of the first character of the segment within the script text.
+     */
+    private int startOffset;
+
+    /**
+     * Text of the segment.
+     */
+    private String text;
+}
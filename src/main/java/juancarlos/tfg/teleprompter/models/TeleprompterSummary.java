@@ -0,0 +1,42 @@
+package juancarlos.tfg.teleprompter.models;
+
+import java.time.LocalDate;
+
+/**
+ * Projection of a teleprompter document used for listings.
+ * Only selects the columns shown in the document list, never the script content.
+ *
+ * @author Juan Carlos
+ */
+public interface TeleprompterSummary {
+
+    /**
+     * @return The unique identifier of the document
+     */
+    Long getId();
+
+    /**
+     * @return The name of the document
+     */
+    String getName();
+
+    /**
+     * @return The description of the document
+     */
+    String getDescription();
+
+    /**
+     * @return The name of the uploaded file
+     */
+    String getFileName();
+
+    /**
+     * @return The date when the document was created
+     */
+    LocalDate getCreatedDate();
+
+    /**
+     * @return The date when the document was last updated
+     */
+    LocalDate getUpdatedDate();
+}
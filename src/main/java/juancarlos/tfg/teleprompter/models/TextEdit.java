@@ -0,0 +1,34 @@
+package juancarlos.tfg.teleprompter.models;
+
+import juancarlos.tfg.teleprompter.enums.EditOperation;
+import lombok.Data;
+
+/**
+ * Data transfer object for a single text operation of a script content patch.
+ * Offsets refer to the text as left by the previous operation of the same patch, and count
+ * UTF-16 code units, so characters outside the Basic Multilingual Plane count as two.
+ *
+ * @author Juan Carlos
+ */
+@Data
+public class TextEdit {
+    /**
+     * The kind of operation.
+     */
+    private EditOperation op;
+
+    /**
+     * Offset where the operation applies, in UTF-16 code units as counted by JavaScript strings.
+     */
+    private int offset;
+
+    /**
+     * Text to insert, used by insert operations.
+     */
+    private String text;
+
+    /**
+     * Number of UTF-16 code units to delete, used by delete operations.
+     */
+    private int length;
+}
@@ -0,0 +1,33 @@
+package juancarlos.tfg.teleprompter.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data transfer object for the tokens issued on login and refresh.
+ *
+ * @author Juan Carlos
+ */
+@Data
+@AllArgsConstructor
+public class TokenPair {
+    /**
+     * The signed access token, sent as a bearer token.
+     */
+    private String accessToken;
+
+    /**
+     * The single-use refresh token.
+     */
+    private String refreshToken;
+
+    /**
+     * The type of the access token, always Bearer.
+     */
+    private String tokenType;
+
+    /**
+     * The lifetime of the access token in seconds.
+     */
+    private long expiresIn;
+}
@@ -0,0 +1,58 @@
+package juancarlos.tfg.teleprompter.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Entity class representing a sentence pair in the translation memory.
+ * Entries are keyed by a hash of the normalized source sentence, the target language,
+ * the model and the prompt version, and expire after a configurable time.
+ *
+ * @author Juan Carlos
+ */
+@Entity
+@Data
+@Table(name = "translation_memory", indexes = @Index(name = "idx_translation_memory_expires_at", columnList = "expiresAt"))
+public class TranslationMemoryEntry {
+
+    /**
+     * Hex-encoded SHA-256 hash of the segment key.
+     */
+    @Id
+    @Column(length = 64)
+    private String segmentKey;
+
+    /**
+     * Source sentence.
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String sourceText;
+
+    /**
+     * Translated sentence.
+     */
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String targetText;
+
+    /**
+     * Detected language of the source sentence.
+     */
+    private String originalLanguage;
+
+    /**
+     * Target language of the translation.
+     */
+    private String targetLanguage;
+
+    /**
+     * Time when the pair was stored.
+     */
+    private Instant createdAt;
+
+    /**
+     * Time after which the pair is no longer used.
+     */
+    private Instant expiresAt;
+}
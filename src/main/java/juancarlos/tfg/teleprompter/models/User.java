@@ -14,7 +14,11 @@ import java.time.LocalDate;
  */
 @Entity
 @Data
-@Table(name = "users")
+@Table(name = "users",
+        uniqueConstraints = {@UniqueConstraint(name = "uk_users_username", columnNames = "username"),
+                @UniqueConstraint(name = "uk_users_email", columnNames = "email")},
+        indexes = {@Index(name = "idx_users_verified_token_expiry", columnList = "verified, tokenExpiryDate"),
+                @Index(name = "idx_users_token", columnList = "token")})
 public class User {
 
     /**
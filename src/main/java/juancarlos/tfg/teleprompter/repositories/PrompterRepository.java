@@ -1,9 +1,20 @@
 package juancarlos.tfg.teleprompter.repositories;
 
 import juancarlos.tfg.teleprompter.models.Teleprompter;
-import juancarlos.tfg.teleprompter.models.User;
+import juancarlos.tfg.teleprompter.models.TeleprompterContent;
+import juancarlos.tfg.teleprompter.models.TeleprompterSummary;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,19 +36,146 @@ public interface PrompterRepository extends JpaRepository<Teleprompter, Long> {
     Optional<Teleprompter> findByNameAndUserId(String name, Long user_id);
 
     /**
-     * Finds all teleprompter documents owned by a specific user.
+     * Returns the digests of the stored files referenced by the documents of a user,
+     * once per referencing document.
      *
-     * @param user The user who owns the documents
-     * @return A list of teleprompter documents owned by the user
+     * @param userId The ID of the user who owns the documents
+     * @return The digests of the stored files
      */
-    List<Teleprompter> findByUser(User user);
+    @Query("select t.blobDigest from Teleprompter t where t.user.id = :userId and t.blobDigest is not null")
+    List<String> findBlobDigestsByUserId(@Param("userId") Long userId);
 
     /**
-     * Finds a teleprompter document by its ID and owner user.
+     * Returns the paths of the files of a user's documents uploaded before the content-addressed store.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @return The paths of the files
+     */
+    @Query("select t.filePath from Teleprompter t where t.user.id = :userId and t.blobDigest is null and t.filePath is not null")
+    List<String> findLegacyFilePathsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Checks whether any document still points to a file under a path.
+     * Documents uploaded before the content-addressed store keep the path of their upload
+     * directory, which still carries the old username after a rename.
+     *
+     * @param prefix The path prefix, ending with a separator
+     * @return true if a document references a file under the prefix
+     */
+    boolean existsByFilePathStartingWith(String prefix);
+
+    /**
+     * Checks whether any document still points to a file inside an upload directory.
+     *
+     * @param directory The upload directory
+     * @return true if a document references a file in the directory, which must then be kept
+     */
+    default boolean referencesDirectory(Path directory) {
+        return existsByFilePathStartingWith(directory + File.separator);
+    }
+
+    /**
+     * Locks the documents of a user until the end of the transaction, so no document can be
+     * added, moved or have its file replaced while the user is being deleted.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @return The IDs of the locked documents
+     */
+    @Query(value = "select id from teleprompter where user_id = :userId for update", nativeQuery = true)
+    List<Long> lockByUserId(@Param("userId") Long userId);
+
+    /**
+     * Returns the IDs of the stored contents of the documents of a user.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @return The IDs of the stored contents
+     */
+    @Query("select t.body.id from Teleprompter t where t.user.id = :userId and t.body is not null")
+    List<Long> findContentIdsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Deletes all documents of a user in a single statement.
+     * Their stored contents must be deleted separately.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @return The number of deleted documents
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Teleprompter t where t.user.id = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+
+    /**
+     * Scrolls through the documents owned by a user using keyset pagination.
+     * Only the columns of the summary projection are selected.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @param position The keyset position to continue from
+     * @param sort The sort order of the documents
+     * @param limit The maximum number of documents to return
+     * @return A window of document summaries
+     */
+    Window<TeleprompterSummary> findByUserId(Long userId, ScrollPosition position, Sort sort, Limit limit);
+
+    /**
+     * Counts the documents owned by a user.
+     *
+     * @param userId The ID of the user who owns the documents
+     * @return The number of documents owned by the user
+     */
+    long countByUserId(Long userId);
+
+    /**
+     * Finds a teleprompter document by its ID and the ID of its owner user.
      *
      * @param id The ID of the teleprompter document
-     * @param user The user who owns the document
+     * @param userId The ID of the user who owns the document
      * @return An Optional containing the teleprompter if found
      */
-    Optional<Teleprompter> findByIdAndUser(Long id, User user);
+    Optional<Teleprompter> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * Finds a teleprompter document by its ID and owner, loading its compressed content in the same query.
+     *
+     * @param id The ID of the teleprompter document
+     * @param userId The ID of the user who owns the document
+     * @return An Optional containing the teleprompter, with its body initialized, if found
+     */
+    @Query("select t from Teleprompter t left join fetch t.body where t.id = :id and t.user.id = :userId")
+    Optional<Teleprompter> findWithBodyByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    /**
+     * Deletes a document whose content was never stored, such as an upload that could not be extracted.
+     *
+     * @param id The ID of the teleprompter document
+     * @return The number of deleted rows, 0 if the document no longer exists or has content
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Teleprompter t where t.id = :id and t.body is null")
+    int deleteWithoutContent(@Param("id") Long id);
+
+    /**
+     * Sets the speed of a teleprompter document without loading it.
+     *
+     * @param id The ID of the teleprompter document
+     * @param speed The speed setting
+     * @return The number of updated rows, 0 if the document no longer exists
+     */
+    @Transactional
+    @Modifying
+    @Query("update Teleprompter t set t.speed = :speed where t.id = :id")
+    int updateSpeed(@Param("id") Long id, @Param("speed") Integer speed);
+
+    /**
+     * Links a stored content row to a teleprompter document without touching its other columns.
+     *
+     * @param id The ID of the teleprompter document
+     * @param body The stored content
+     * @return The number of updated rows, 0 if the document no longer exists
+     */
+    @Transactional
+    @Modifying
+    @Query("update Teleprompter t set t.body = :body where t.id = :id")
+    int attachBody(@Param("id") Long id, @Param("body") TeleprompterContent body);
 }
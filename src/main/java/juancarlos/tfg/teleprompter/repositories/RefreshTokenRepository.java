@@ -0,0 +1,84 @@
+package juancarlos.tfg.teleprompter.repositories;
+
+import juancarlos.tfg.teleprompter.models.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Repository interface for managing RefreshToken entities.
+ *
+ * @author Juan Carlos
+ */
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+
+    /**
+     * Finds a refresh token by the hash of its value.
+     *
+     * @param tokenHash The hex-encoded SHA-256 hash of the token
+     * @return An Optional containing the token if found
+     */
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Marks a token as consumed, unless it was already consumed.
+     * The condition makes concurrent refreshes with the same token consume it only once.
+     *
+     * @param id The token id
+     * @param now The current time
+     * @return 1 if the token was consumed by this call, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.usedAt = :now where t.id = :id and t.usedAt is null")
+    int markUsed(@Param("id") Long id, @Param("now") Instant now);
+
+    /**
+     * Revokes all the unused tokens of a family.
+     *
+     * @param familyId The family id
+     * @param now The current time
+     * @return The number of revoked tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.usedAt = :now where t.familyId = :familyId and t.usedAt is null")
+    int revokeFamily(@Param("familyId") String familyId, @Param("now") Instant now);
+
+    /**
+     * Deletes all the tokens of a user.
+     *
+     * @param userId The ID of the user
+     * @return The number of deleted tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+
+    /**
+     * Deletes the tokens of users that no longer exist, left behind by bulk user deletes.
+     *
+     * @return The number of deleted tokens
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from refresh_token where not exists (select 1 from users u where u.id = refresh_token.user_id)", nativeQuery = true)
+    int deleteOrphaned();
+
+    /**
+     * Deletes the tokens that expired before a given time.
+     *
+     * @param now The current time
+     * @return The number of deleted tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,46 @@
+package juancarlos.tfg.teleprompter.repositories;
+
+import juancarlos.tfg.teleprompter.models.SchedulerLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Repository interface for managing SchedulerLock entities.
+ *
+ * @author Juan Carlos
+ */
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLock, String> {
+
+    /**
+     * Takes the lease of a task, unless another node holds an unexpired lease.
+     * The condition makes concurrent attempts from several nodes succeed only once.
+     *
+     * @param name The name of the task
+     * @param owner The node taking the lease
+     * @param now The current time
+     * @param until The time until which the lease is held
+     * @return 1 if the lease was taken by this call, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("update SchedulerLock l set l.lockedBy = :owner, l.lockedAt = :now, l.lockedUntil = :until where l.name = :name and l.lockedUntil <= :now")
+    int acquire(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now, @Param("until") Instant until);
+
+    /**
+     * Ends the lease of a task, if it is still held by the given node.
+     *
+     * @param name The name of the task
+     * @param owner The node that took the lease
+     * @param now The current time
+     * @return 1 if the lease was released, 0 if it had expired and was taken by another node
+     */
+    @Transactional
+    @Modifying
+    @Query("update SchedulerLock l set l.lockedUntil = :now where l.name = :name and l.lockedBy = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now);
+}
@@ -0,0 +1,40 @@
+package juancarlos.tfg.teleprompter.repositories;
+
+import jakarta.persistence.LockModeType;
+import juancarlos.tfg.teleprompter.models.StoredBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for managing StoredBlob entities.
+ * Provides methods for reading and locking the reference counts of stored files.
+ *
+ * @author Juan Carlos
+ */
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    /**
+     * Finds a stored file by its digest and locks its row until the end of the transaction.
+     *
+     * @param digest The SHA-256 digest of the file
+     * @return An Optional containing the stored file if found
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from StoredBlob b where b.digest = :digest")
+    Optional<StoredBlob> findForUpdate(@Param("digest") String digest);
+
+    /**
+     * Returns which of the given digests are stored.
+     *
+     * @param digests The SHA-256 digests to check
+     * @return The digests that have a row
+     */
+    @Query("select b.digest from StoredBlob b where b.digest in :digests")
+    List<String> findExistingDigests(@Param("digests") Collection<String> digests);
+}
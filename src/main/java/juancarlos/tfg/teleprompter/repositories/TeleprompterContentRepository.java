@@ -0,0 +1,29 @@
+package juancarlos.tfg.teleprompter.repositories;
+
+import juancarlos.tfg.teleprompter.models.TeleprompterContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * Repository interface for managing TeleprompterContent entities.
+ *
+ * @author Juan Carlos
+ */
+public interface TeleprompterContentRepository extends JpaRepository<TeleprompterContent, Long> {
+
+    /**
+     * Deletes the given stored contents in a single statement.
+     *
+     * @param ids The IDs of the stored contents
+     * @return The number of deleted contents
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from TeleprompterContent c where c.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,50 @@
+package juancarlos.tfg.teleprompter.repositories;
+
+import juancarlos.tfg.teleprompter.models.TranslationMemoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Repository interface for managing TranslationMemoryEntry entities.
+ *
+ * @author Juan Carlos
+ */
+public interface TranslationMemoryRepository extends JpaRepository<TranslationMemoryEntry, String> {
+
+    /**
+     * Stores a sentence translation unless one is already stored under the same key.
+     *
+     * @param segmentKey The key of the translation
+     * @param sourceText The source sentence
+     * @param targetText The translated sentence
+     * @param originalLanguage The detected language of the source sentence
+     * @param targetLanguage The target language
+     * @param createdAt The time the translation was made
+     * @param expiresAt The time after which the translation is no longer used
+     * @return 1 if the translation was inserted, 0 if the key was already stored
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into translation_memory (segment_key, source_text, target_text, original_language, target_language, created_at, expires_at) "
+            + "values (:segmentKey, :sourceText, :targetText, :originalLanguage, :targetLanguage, :createdAt, :expiresAt) "
+            + "on duplicate key update segment_key = segment_key", nativeQuery = true)
+    int insertIfAbsent(@Param("segmentKey") String segmentKey, @Param("sourceText") String sourceText, @Param("targetText") String targetText,
+                       @Param("originalLanguage") String originalLanguage, @Param("targetLanguage") String targetLanguage,
+                       @Param("createdAt") Instant createdAt, @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Deletes the translations that expired before a given time.
+     *
+     * @param now The current time
+     * @return The number of deleted entries
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from TranslationMemoryEntry e where e.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
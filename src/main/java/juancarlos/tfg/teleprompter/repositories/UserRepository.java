@@ -2,7 +2,13 @@ package juancarlos.tfg.teleprompter.repositories;
 
 import juancarlos.tfg.teleprompter.models.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,34 +28,42 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
 
     /**
-     * Finds all users with the specified username.
+     * Finds a user by their email address.
      *
-     * @param username The username to search for
-     * @return A list of users with the specified username
+     * @param email The email address to search for
+     * @return An Optional containing the user if found
      */
-    List<User> findAllByUsername(String username);
+    Optional<User> findByEmail(String email);
 
     /**
-     * Finds a user by their email address.
+     * Finds a user by their verification or reset token.
      *
-     * @param email The email address to search for
+     * @param token The token to search for
      * @return An Optional containing the user if found
      */
-    Optional<User> findByEmail(String email);
+    Optional<User> findByToken(String token);
 
     /**
-     * Finds all users with the specified email address.
+     * Returns which of the given usernames belong to existing users.
      *
-     * @param email The email address to search for
-     * @return A list of users with the specified email address
+     * @param usernames The usernames to check
+     * @return The usernames that exist
      */
-    List<User> findAllByEmail(String email);
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
 
     /**
-     * Finds a user by their verification or reset token.
+     * Deletes a batch of unverified users whose verification token expired before the given date.
+     * Users that still own teleprompter documents are kept. The statement runs in its own
+     * transaction, so each batch holds its row locks only briefly.
      *
-     * @param token The token to search for
-     * @return An Optional containing the user if found
+     * @param cutoff The date before which tokens are considered expired
+     * @param limit The maximum number of users to delete
+     * @return The number of deleted users
      */
-    Optional<User> findByToken(String token);
+    @Transactional
+    @Modifying
+    @Query(value = "delete from users where verified = false and token_expiry_date < :cutoff "
+            + "and not exists (select 1 from teleprompter t where t.user_id = users.id) limit :limit", nativeQuery = true)
+    int deleteExpiredUnverified(@Param("cutoff") LocalDate cutoff, @Param("limit") int limit);
 }
\ No newline at end of file
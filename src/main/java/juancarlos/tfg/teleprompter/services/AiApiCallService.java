@@ -1,160 +1,210 @@
 package juancarlos.tfg.teleprompter.services;
 
-import juancarlos.tfg.teleprompter.models.TextTranslationRequest;
-import juancarlos.tfg.teleprompter.models.TranslationResponse;
-import com.fasterxml.jackson.databind.JsonNode;
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+import juancarlos.tfg.teleprompter.models.ChatMessage;
+import juancarlos.tfg.teleprompter.models.SegmentTranslation;
+import juancarlos.tfg.teleprompter.services.provider.TranslationRouter;
+import juancarlos.tfg.teleprompter.services.provider.ChatCompletionCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * Service class that handles communication with the OpenAI API for text translation.
- * Provides functionality for translating text using GPT-3.5 Turbo model.
+ * Service class that handles the communication with the AI providers for text translation.
+ * Builds the translation prompts and parses the answers with the Jackson streaming API;
+ * the provider of every request is picked by the {@link TranslationRouter}. Segment translations
+ * are stored by the {@link TranslationMemoryService} under the keys computed here.
  *
  * @author Juan Carlos
  */
 @Service
+@Slf4j
 public class AiApiCallService {
 
-    @Value("${OPENAI_API_KEY}")
-    private String apiKey;
-
-    private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
+    private static final String SEGMENT_PROMPT_VERSION = "1";
+    private static final String STREAM_PROMPT = "You are a professional translator. Translate the text sent by the user into %s, never to English unless English is the target language. "
+            + "Return ONLY the translated text, without quotes, notes or any additional text. "
+            + "Translate exactly what is provided, do not add or modify content, and keep the tone, style and line breaks of the original text.";
+    private static final String STREAM_DATA_PREFIX = "data:";
+    private static final String STREAM_DONE = "[DONE]";
+    private static final String SEGMENT_PROMPT = "You are a professional translator. You receive a JSON object with a target language and a list of segments. "
+            + "Translate every segment into the target language, never to English unless English is the target language. "
+            + "Return ONLY a JSON object in the format {\"original_language\": \"detected language\", \"segments\": [\"translated segment\"]}, "
+            + "with exactly one translated segment per input segment, in the same order. "
+            + "Translate exactly what is provided, do not merge, split, add or modify segments, and keep the tone and style of the original text.";
+
+    private final TranslationRouter translationRouter;
+    private final TranslationCacheService translationCacheService;
+    private final ChatCompletionCodec codec;
+    private final ObjectMapper objectMapper;
 
     /**
-     * Creates an HTTP entity with the translation request body and headers.
-     * Formats the request to instruct the AI model to act as a professional translator.
+     * Constructs a new AiApiCallService.
      *
-     * @param request The translation request containing text and target language
-     * @param headers The HTTP headers for the request
-     * @return An HttpEntity containing the formatted request body and headers
+     * @param translationRouter The router that picks the provider of every request
+     * @param translationCacheService The cache whose keys identify segment translations
+     * @param codec The codec used to read the provider responses
+     * @param objectMapper The mapper whose factory writes the segment messages
      */
-    private static HttpEntity<String> httpBody(TextTranslationRequest request, HttpHeaders headers) {
-        String body = String.format("{\"model\": \"gpt-3.5-turbo\", \"messages\": [{\"role\": \"system\", \"content\": \"You are a professional translator. Your task is to translate text into the specified target language. You must ALWAYS translate to the target language, never to English unless English is the target language. Return ONLY a JSON object with the translated text and detected original language.\"}, {\"role\": \"user\", \"content\": \"Translate the following text into %s. Return the response in the following JSON format:\\n{\\\"text\\\": \\\"translated text\\\", \\\"original_language\\\": \\\"detected language\\\"}\\n\\nText to translate:\\n%s\\n\\nImportant:\\n- Translate to %s ONLY\\n- Return ONLY the JSON object\\n- Do not add any additional text or characters\\n- Translate exactly what is provided, do not add or modify content\\n- Ensure the JSON is properly formatted\\n- Maintain the same tone and style as the original text\\n- Preserve any special characters or formatting\"}]}", 
-            request.getTargetLanguage(),
-            request.getText(),
-            request.getTargetLanguage());
-        return new HttpEntity<>(body, headers);
+    public AiApiCallService(TranslationRouter translationRouter, TranslationCacheService translationCacheService, ChatCompletionCodec codec,
+                            ObjectMapper objectMapper) {
+        this.translationRouter = translationRouter;
+        this.translationCacheService = translationCacheService;
+        this.codec = codec;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Translates text using the OpenAI API.
-     * Sends a request to the API and processes the response to extract the translated text
-     * and detected original language.
+     * Translates text using the best available AI provider in streaming mode.
+     * The completion is requested with stream=true and every text delta is handed to the consumer
+     * as soon as its server-sent event arrives, without buffering the whole response.
+     * An exception thrown by the consumer aborts the upstream request.
      *
-     * @param request The translation request containing text and target language
-     * @return A TranslationResponse containing the translated text, original language, and target language
+     * @param text The text to translate
+     * @param targetLanguage The target language
+     * @param onDelta The consumer of the translated text fragments
+     * @throws IOException if the request fails or the stream cannot be read
      */
-    public TranslationResponse translateText(TextTranslationRequest request) {
-        try {
-            System.out.println("Target language: " + request.getTargetLanguage());
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + apiKey);
-            headers.set("Content-Type", "application/json");
-
-            HttpEntity<String> entity = httpBody(request, headers);
-            ResponseEntity<String> response = restTemplate.exchange(OPENAI_API_URL, HttpMethod.POST, entity, String.class);
-            
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(response.getBody());
-            JsonNode messageNode = root.path("choices").get(0).path("message");
-            String content = messageNode.path("content").asText();
-            
-            content = content.replaceAll("```json\\s*", "").replaceAll("```\\s*", "").trim();
-            
-            JsonNode translationNode = mapper.readTree(content);
-            String translatedText = translationNode.path("text").asText();
-            String originalLanguage = translationNode.path("original_language").asText();
-            System.out.println("Original language: " + originalLanguage);
-            
-            return TranslationResponse.success(translatedText, originalLanguage, request.getTargetLanguage());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return TranslationResponse.error("Translation failed", e.getMessage());
-        }
+    public void streamTranslation(String text, String targetLanguage, Consumer<String> onDelta) throws IOException {
+        ChatCompletionRequest request = new ChatCompletionRequest(List.of(
+                new ChatMessage("system", String.format(STREAM_PROMPT, targetLanguage)),
+                new ChatMessage("user", text)), false);
+
+        translationRouter.stream(request, line -> {
+            if (!line.startsWith(STREAM_DATA_PREFIX)) {
+                return;
+            }
+            String data = line.substring(STREAM_DATA_PREFIX.length()).trim();
+            if (data.isEmpty() || data.equals(STREAM_DONE)) {
+                return;
+            }
+            try {
+                String delta = codec.readDelta(data);
+                if (delta != null && !delta.isEmpty()) {
+                    onDelta.accept(delta);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
-}
 
+    /**
+     * Returns the scopes segment translations can be stored under, one per enabled provider
+     * and model whose translations may be stored.
+     *
+     * @return The cache scopes, best provider first
+     */
+    public List<String> cacheScopes() {
+        return translationRouter.cacheScopes();
+    }
 
-/*@Value("${magicloops.api.url}")
-    private String apiUrl;
-
-    private static HttpEntity<String> httpBody(TextTranslationRequest request, HttpHeaders headers) {
-        String body = String.format("{\"input\": \"Text to translate: '{%s}' {{(%s)}}\"}", 
-            request.getText(), 
-            request.getTargetLanguage());
-        return new HttpEntity<>(body, headers);
+    /**
+     * Computes the translation memory key of a single segment.
+     *
+     * @param segment The source segment
+     * @param targetLanguage The target language
+     * @param cacheScope The provider and model that translate the segment
+     * @return The key identifying the translation of the segment by that model with the current prompt
+     */
+    public String segmentKey(String segment, String targetLanguage, String cacheScope) {
+        return translationCacheService.key(segment, targetLanguage, cacheScope, SEGMENT_PROMPT_VERSION);
     }
 
-    public TranslationResponse translateText(TextTranslationRequest request) {
+    /**
+     * Translates a list of segments in a single request using the best available AI provider.
+     * The segments are sent as a JSON list and the model answers with a list of the same length,
+     * so each translation can be matched to its source segment.
+     *
+     * @param segments The segments to translate
+     * @param targetLanguage The target language
+     * @return The translated segments in the same order with the scope they may be stored under,
+     *         or null if the request failed or the model did not return one translation per segment
+     */
+    public SegmentTranslation translateSegments(List<String> segments, String targetLanguage) {
         try {
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Content-Type", "application/json");
-
-            HttpEntity<String> entity = httpBody(request, headers);
-            ResponseEntity<String> response = restTemplate.exchange(apiUrl, HttpMethod.POST, entity, String.class);
-            
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(response.getBody());
-            
-            String translatedText = root.path("text").asText();
-            String originalLanguage = root.path("original_language").asText();
-            
-            return TranslationResponse.success(translatedText, originalLanguage, request.getTargetLanguage());
+            ChatCompletionRequest request = new ChatCompletionRequest(List.of(
+                    new ChatMessage("system", SEGMENT_PROMPT),
+                    new ChatMessage("user", segmentsMessage(segments, targetLanguage))),
+                    true);
+            TranslationRouter.Completion completion = translationRouter.complete(request);
+            String content = answer(completion.body());
+
+            List<String> result = new ArrayList<>(segments.size());
+            String originalLanguage = null;
+            try (JsonParser parser = codec.openEmbeddedObject(content)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (field.equals("segments") && value == JsonToken.START_ARRAY) {
+                        for (JsonToken item = parser.nextToken(); item != null && item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+                            result.add(parser.getValueAsString());
+                            parser.skipChildren();
+                        }
+                    } else if (field.equals("original_language")) {
+                        originalLanguage = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            if (result.size() != segments.size() || result.contains(null)) {
+                log.warn("Expected {} translated segments but got {}", segments.size(), result.size());
+                return null;
+            }
+            return new SegmentTranslation(result, originalLanguage, TranslationRouter.cacheScope(completion.provider()));
         } catch (Exception e) {
-            e.printStackTrace();
-            return TranslationResponse.error("Translation failed", e.getMessage());
+            log.error("Segment translation failed", e);
+            return null;
         }
-    }*/
-
-
-
-/*
- * @Value("${openrouter.api.key}")
-    private String apiKey;
-
-    @Value("${openrouter.api.base-url}")
-    private String baseUrl;
-
-    private static HttpEntity<String> httpBody(TextTranslationRequest request, HttpHeaders headers) {
-        String body = String.format("{\"model\": \"deepseek/deepseek-r1:free\", \"messages\": [{\"role\": \"user\", \"content\": \"Translate the following text into the language specified within brackets and parentheses. Return the response in the following JSON format:\\n{\\\"text\\\": \\\"translated text\\\", \\\"original_language\\\": \\\"detected language\\\"}\\n\\nText to translate: '{%s}' {{(%s)}}\\n\\nImportant:\\n- Return ONLY the JSON object\\n- Do not add any additional text or characters\\n- Translate exactly what is provided, do not add or modify content\\n- Ensure the JSON is properly formatted\"}]}", request.getText(), request.getTargetLanguage());
-        return new HttpEntity<>(body, headers);
     }
 
-    public TranslationResponse translateText(TextTranslationRequest request) {
-        try {
-            RestTemplate restTemplate = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + apiKey);
-            headers.set("Content-Type", "application/json");
+    /**
+     * Writes the user message of a segment translation request,
+     * a JSON object with the target language and the list of segments.
+     *
+     * @param segments The segments to translate
+     * @param targetLanguage The target language
+     * @return The JSON message
+     * @throws IOException if the message cannot be written
+     */
+    private String segmentsMessage(List<String> segments, String targetLanguage) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("target_language", targetLanguage);
+            generator.writeArrayFieldStart("segments");
+            for (String segment : segments) {
+                generator.writeString(segment);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
 
-            HttpEntity<String> entity = httpBody(request, headers);
-            ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/chat/completions", HttpMethod.POST, entity, String.class);
-            System.out.println("Response: " + response.getBody());
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(response.getBody());
-            JsonNode messageNode = root.path("choices").get(0).path("message");
-            String content = messageNode.path("content").asText();
-            
-            // Clean the content by removing any backticks and markdown code block markers
-            content = content.replaceAll("```json\\s*", "").replaceAll("```\\s*", "").trim();
-            
-            // Parse the JSON response from the AI
-            JsonNode translationNode = mapper.readTree(content);
-            String translatedText = translationNode.path("text").asText();
-            String originalLanguage = translationNode.path("original_language").asText();
-            
-            return TranslationResponse.success(translatedText, originalLanguage, request.getTargetLanguage());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return TranslationResponse.error("Translation failed", e.getMessage());
+    /**
+     * Extracts the assistant message from a chat completion response.
+     *
+     * @param response The UTF-8 encoded response body
+     * @return The message content
+     * @throws IOException if the response cannot be read or has no message content
+     */
+    private String answer(byte[] response) throws IOException {
+        String content = codec.readContent(response);
+        if (content == null) {
+            throw new IOException("The response has no message content");
         }
+        return content;
     }
- */
\ No newline at end of file
+}
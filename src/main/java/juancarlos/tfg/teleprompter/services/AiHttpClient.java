@@ -0,0 +1,485 @@
+package juancarlos.tfg.teleprompter.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import juancarlos.tfg.teleprompter.enums.CircuitState;
+import juancarlos.tfg.teleprompter.services.resilience.CircuitBreaker;
+import juancarlos.tfg.teleprompter.services.resilience.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service class for outbound calls to the AI providers.
+ * Sends requests through the shared {@link HttpClient}, applies the request timeout, and bounds
+ * the number of requests in flight so a slow upstream cannot exhaust the connection pool.
+ * Each provider host gets a token bucket tuned from its rate-limit headers and a circuit breaker,
+ * and throttled or failed requests are retried with jittered exponential backoff. This is the only
+ * retry layer of the AI calls: all the attempts of a request, and the waits for tokens, connections
+ * and backoff, share one overall deadline.
+ * Publishes the in-flight and waiting request counts, retries and circuit states as metrics.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class AiHttpClient {
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 500, 502, 503, 504);
+    private static final int MAX_LOGGED_BODY = 500;
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
+    private final Duration requestTimeout;
+    private final Duration deadline;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<String, ProviderGuard> guards = new ConcurrentHashMap<>();
+    private final Counter retries;
+    private final int maxAttempts;
+    private final long retryBaseMs;
+    private final long retryMaxMs;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final long requestsPerMinute;
+
+    /**
+     * Constructs a new AiHttpClient.
+     *
+     * @param httpClient The shared HTTP client
+     * @param meterRegistry The registry the pool metrics are published to
+     * @param requestTimeoutMs The timeout of a single attempt, in milliseconds
+     * @param deadlineMs The time allowed for a request including all its attempts, in milliseconds
+     * @param maxConnections The maximum number of requests in flight
+     * @param maxAttempts The maximum number of attempts per request
+     * @param retryBaseMs The base delay of the exponential backoff, in milliseconds
+     * @param retryMaxMs The maximum delay between attempts, in milliseconds
+     * @param failureThreshold The number of consecutive failures that opens the circuit of a provider
+     * @param openMs How long the circuit of a provider stays open before a probe, in milliseconds
+     * @param requestsPerMinute The request rate assumed for a provider until it reports its limits
+     */
+    public AiHttpClient(HttpClient httpClient, MeterRegistry meterRegistry,
+                        @Value("${teleprompter.http.request-timeout-ms:60000}") long requestTimeoutMs,
+                        @Value("${teleprompter.ai.deadline-ms:90000}") long deadlineMs,
+                        @Value("${teleprompter.http.max-connections:20}") int maxConnections,
+                        @Value("${teleprompter.ai.max-attempts:4}") int maxAttempts,
+                        @Value("${teleprompter.ai.retry-base-ms:250}") long retryBaseMs,
+                        @Value("${teleprompter.ai.retry-max-ms:8000}") long retryMaxMs,
+                        @Value("${teleprompter.ai.breaker.failure-threshold:5}") int failureThreshold,
+                        @Value("${teleprompter.ai.breaker.open-ms:30000}") long openMs,
+                        @Value("${teleprompter.ai.requests-per-minute:500}") long requestsPerMinute) {
+        this.httpClient = httpClient;
+        this.meterRegistry = meterRegistry;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.deadline = Duration.ofMillis(deadlineMs);
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxAttempts = maxAttempts;
+        this.retryBaseMs = retryBaseMs;
+        this.retryMaxMs = retryMaxMs;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = Duration.ofMillis(openMs);
+        this.requestsPerMinute = requestsPerMinute;
+        this.retries = meterRegistry.counter("teleprompter.http.retries");
+
+        Gauge.builder("teleprompter.http.in-flight", permits, p -> maxConnections - p.availablePermits())
+                .description("Outbound AI requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("teleprompter.http.waiting", waiting, AtomicInteger::get)
+                .description("Outbound AI requests waiting for a connection")
+                .register(meterRegistry);
+        Gauge.builder("teleprompter.http.max-connections", () -> maxConnections)
+                .description("Maximum outbound AI requests in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Posts a JSON body with bearer authentication and returns the response body.
+     * Bodies are kept as UTF-8 bytes, so they are never decoded into strings on the way.
+     *
+     * @param uri The URI to post to
+     * @param apiKey The bearer token
+     * @param body The UTF-8 encoded JSON request body
+     * @return The response body
+     * @throws IOException if the request fails, times out, or the response status is not 2xx
+     */
+    public byte[] postJson(URI uri, String apiKey, byte[] body) throws IOException {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        ProviderGuard guard = guard(uri);
+        for (int attempt = 1; ; attempt++) {
+            HttpRequest request = jsonRequest(uri, apiKey, body, deadlineNanos);
+            guard.admit(uri, deadlineNanos);
+
+            HttpResponse<byte[]> response;
+            try {
+                acquire(request, deadlineNanos);
+            } catch (IOException e) {
+                guard.breaker.onCancelled();
+                throw e;
+            }
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            } catch (InterruptedException e) {
+                guard.breaker.onCancelled();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while calling " + uri.getHost(), e);
+            } catch (IOException e) {
+                guard.breaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Request to {} failed, retrying: {}", uri.getHost(), e.getMessage());
+                backoff(attempt, null, deadlineNanos, e);
+                continue;
+            } finally {
+                permits.release();
+            }
+
+            guard.observe(response.headers());
+            int status = response.statusCode();
+            if (status / 100 == 2) {
+                guard.breaker.onSuccess();
+                return response.body();
+            }
+            if (!RETRYABLE_STATUSES.contains(status)) {
+                guard.breaker.onSuccess();
+                log.warn("Request to {} failed with status {}: {}", uri, status, excerpt(new String(response.body(), StandardCharsets.UTF_8)));
+                throw new IOException("Request to " + uri.getHost() + " failed with status " + status);
+            }
+
+            guard.breaker.onFailure();
+            Duration retryAfter = retryAfter(response.headers());
+            if (status == 429 && retryAfter != null) {
+                guard.bucket.pause(retryAfter);
+            }
+            IOException failure = new IOException("Request to " + uri.getHost() + " failed with status " + status + " after " + attempt + " attempts");
+            if (attempt >= maxAttempts) {
+                throw failure;
+            }
+            log.warn("Request to {} returned {}, retrying", uri.getHost(), status);
+            backoff(attempt, retryAfter, deadlineNanos, failure);
+        }
+    }
+
+    /**
+     * Posts a JSON body with bearer authentication and hands each line of the response
+     * to a consumer as soon as it arrives. The connection permit is held until the whole
+     * response has been consumed; an exception thrown by the consumer aborts the request.
+     *
+     * @param uri The URI to post to
+     * @param apiKey The bearer token
+     * @param body The UTF-8 encoded JSON request body
+     * @param lineConsumer The consumer of the response lines
+     * @throws IOException if the request fails, times out, or the response status is not 2xx
+     */
+    public void postJsonStream(URI uri, String apiKey, byte[] body, Consumer<String> lineConsumer) throws IOException {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        HttpRequest request = jsonRequest(uri, apiKey, body, deadlineNanos);
+        ProviderGuard guard = guard(uri);
+        guard.admit(uri, deadlineNanos);
+        try {
+            acquire(request, deadlineNanos);
+        } catch (IOException e) {
+            guard.breaker.onCancelled();
+            throw e;
+        }
+        try {
+            HttpResponse<Stream<String>> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+            } catch (InterruptedException e) {
+                guard.breaker.onCancelled();
+                throw e;
+            } catch (IOException e) {
+                guard.breaker.onFailure();
+                throw e;
+            }
+            guard.observe(response.headers());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    if (RETRYABLE_STATUSES.contains(response.statusCode())) {
+                        guard.breaker.onFailure();
+                    } else {
+                        guard.breaker.onSuccess();
+                    }
+                    log.warn("Request to {} failed with status {}: {}", uri, response.statusCode(), excerpt(lines.collect(Collectors.joining("\n"))));
+                    throw new IOException("Request to " + uri.getHost() + " failed with status " + response.statusCode());
+                }
+                guard.breaker.onSuccess();
+                lines.forEach(lineConsumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + uri.getHost(), e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a request once a connection permit is available.
+     * Waits at most the request timeout for a permit.
+     *
+     * @param request The request to send
+     * @param bodyHandler The handler for the response body
+     * @param <T> The type of the response body
+     * @return The response
+     * @throws IOException if no permit becomes available in time, or the request fails or is interrupted
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        acquire(request, System.nanoTime() + requestTimeout.toNanos());
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + request.uri().getHost(), e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Builds a JSON POST request with bearer authentication.
+     * Times out after the request timeout, or earlier if the deadline of the request comes first.
+     *
+     * @param uri The URI to post to
+     * @param apiKey The bearer token
+     * @param body The UTF-8 encoded JSON request body
+     * @param deadlineNanos The deadline of the request, in {@link System#nanoTime()} units
+     * @return The request
+     * @throws IOException if the deadline has already passed
+     */
+    private HttpRequest jsonRequest(URI uri, String apiKey, byte[] body, long deadlineNanos) throws IOException {
+        long remaining = remainingNanos(uri, deadlineNanos);
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofNanos(Math.min(requestTimeout.toNanos(), remaining)))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    /**
+     * Waits for a connection permit until the deadline of the request.
+     *
+     * @param request The request the permit is for
+     * @param deadlineNanos The deadline of the request, in {@link System#nanoTime()} units
+     * @throws IOException if no permit becomes available in time or the thread is interrupted
+     */
+    private void acquire(HttpRequest request, long deadlineNanos) throws IOException {
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(remainingNanos(request.uri(), deadlineNanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            throw new IOException("Timed out waiting for a connection to " + request.uri().getHost());
+        }
+    }
+
+    /**
+     * Returns the rate limiter and circuit breaker of the host of a URI, creating them on first use.
+     *
+     * @param uri The URI of the provider
+     * @return The guard of the provider host
+     */
+    private ProviderGuard guard(URI uri) {
+        return guards.computeIfAbsent(uri.getHost(), host -> {
+            ProviderGuard guard = new ProviderGuard(new TokenBucket(requestsPerMinute), new CircuitBreaker(failureThreshold, openDuration));
+            Gauge.builder("teleprompter.http.circuit.open", guard.breaker, b -> b.getState() == CircuitState.CLOSED ? 0 : 1)
+                    .description("Whether the circuit of an AI provider is open or half-open")
+                    .tag("host", host)
+                    .register(meterRegistry);
+            return guard;
+        });
+    }
+
+    /**
+     * Waits before the next attempt, using exponential backoff with full jitter.
+     * Waits at least as long as the provider asked for, and gives up instead when
+     * the next attempt could not start before the deadline.
+     *
+     * @param attempt The number of the attempt that failed
+     * @param retryAfter The delay requested by the provider, or null
+     * @param deadlineNanos The deadline of the request, in {@link System#nanoTime()} units
+     * @param failure The failure of the attempt, thrown when there is no time left to retry
+     * @throws IOException if there is no time left to retry or the thread is interrupted while waiting
+     */
+    private void backoff(int attempt, Duration retryAfter, long deadlineNanos, IOException failure) throws IOException {
+        long ceiling = Math.min(retryMaxMs, retryBaseMs << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (retryAfter != null) {
+            delay = Math.max(delay, Math.min(retryAfter.toMillis(), retryMaxMs));
+        }
+        if (TimeUnit.MILLISECONDS.toNanos(delay) >= deadlineNanos - System.nanoTime()) {
+            throw failure;
+        }
+        retries.increment();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    /**
+     * Returns the time left until the deadline of a request.
+     *
+     * @param uri The URI of the request
+     * @param deadlineNanos The deadline of the request, in {@link System#nanoTime()} units
+     * @return The remaining time in nanoseconds, always positive
+     * @throws IOException if the deadline has passed
+     */
+    private static long remainingNanos(URI uri, long deadlineNanos) throws IOException {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            throw new IOException("Deadline exceeded for request to " + uri.getHost());
+        }
+        return remaining;
+    }
+
+    /**
+     * Shortens an error body from a provider for the log.
+     * Error bodies are only logged, never included in exception messages, as those can reach clients.
+     *
+     * @param body The response body
+     * @return The first {@value #MAX_LOGGED_BODY} characters of the body
+     */
+    private static String excerpt(String body) {
+        return body.length() <= MAX_LOGGED_BODY ? body : body.substring(0, MAX_LOGGED_BODY) + "...";
+    }
+
+    /**
+     * Reads how long the provider asked callers to wait, from Retry-After or the request reset header.
+     *
+     * @param headers The response headers
+     * @return The requested delay, or null if the provider did not ask for one
+     */
+    private static Duration retryAfter(HttpHeaders headers) {
+        Optional<String> retryAfter = headers.firstValue("retry-after");
+        if (retryAfter.isPresent()) {
+            try {
+                return Duration.ofMillis((long) (Double.parseDouble(retryAfter.get()) * 1000));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return headers.firstValue("x-ratelimit-reset-requests").map(AiHttpClient::parseDuration).orElse(null);
+    }
+
+    /**
+     * Parses a duration in the format used by the rate-limit headers, such as 20ms, 1s or 6m0s.
+     *
+     * @param value The duration text
+     * @return The duration, or null if the text is not a valid duration
+     */
+    static Duration parseDuration(String value) {
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "ms" -> amount;
+                case "s" -> amount * 1000;
+                case "m" -> amount * 60_000;
+                default -> amount * 3_600_000;
+            };
+            end = matcher.end();
+        }
+        return end > 0 && end == value.trim().length() ? Duration.ofMillis((long) millis) : null;
+    }
+
+    /**
+     * Rate limiter and circuit breaker of one provider host.
+     */
+    private class ProviderGuard {
+
+        private final TokenBucket bucket;
+        private final CircuitBreaker breaker;
+
+        /**
+         * Creates a new guard.
+         *
+         * @param bucket The rate limiter of the provider
+         * @param breaker The circuit breaker of the provider
+         */
+        ProviderGuard(TokenBucket bucket, CircuitBreaker breaker) {
+            this.bucket = bucket;
+            this.breaker = breaker;
+        }
+
+        /**
+         * Waits until a request to the provider is allowed.
+         * The circuit is checked first, so requests rejected by an open circuit do not use up tokens.
+         * Once admitted, the caller must report the outcome to the circuit breaker.
+         *
+         * @param uri The URI of the request
+         * @param deadlineNanos The deadline of the request, in {@link System#nanoTime()} units
+         * @throws IOException if the circuit is open or no token becomes available before the deadline
+         */
+        void admit(URI uri, long deadlineNanos) throws IOException {
+            if (!breaker.tryAcquire()) {
+                throw new IOException("Circuit for " + uri.getHost() + " is open");
+            }
+            try {
+                if (!bucket.acquire(Duration.ofNanos(remainingNanos(uri, deadlineNanos)))) {
+                    throw new IOException("Rate limit for " + uri.getHost() + " exceeded");
+                }
+            } catch (InterruptedException e) {
+                breaker.onCancelled();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the rate limit", e);
+            } catch (IOException e) {
+                breaker.onCancelled();
+                throw e;
+            }
+        }
+
+        /**
+         * Retunes the rate limiter from the rate-limit headers of a response.
+         *
+         * @param headers The response headers
+         */
+        void observe(HttpHeaders headers) {
+            OptionalLong limit = headers.firstValueAsLong("x-ratelimit-limit-requests");
+            OptionalLong remaining = headers.firstValueAsLong("x-ratelimit-remaining-requests");
+            if (limit.isPresent() && remaining.isPresent()) {
+                bucket.update(limit.getAsLong(), remaining.getAsLong());
+            }
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package juancarlos.tfg.teleprompter.services;
 
-import juancarlos.tfg.teleprompter.utils.Utils;
 import juancarlos.tfg.teleprompter.enums.UserRole;
 import juancarlos.tfg.teleprompter.models.User;
 import juancarlos.tfg.teleprompter.repositories.UserRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -25,20 +25,16 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final MailService mailService;
-    private final Utils utils;
 
     /**
      * Registers a new user in the system.
      * Creates a new user account and sends a verification email.
+     * Duplicate usernames and emails are rejected by the unique constraints of the users table.
      *
      * @param user The user object containing registration details
-     * @return true if registration was successful, false otherwise
+     * @return true if registration was successful, false if the username or email already exists
      */
     public boolean register(User user) {
-        if (utils.userExists(user)) {
-            return false;
-        }
-
         User newUser = new User();
         newUser.setUsername(user.getUsername());
         newUser.setEmail(user.getEmail());
@@ -46,12 +42,16 @@ public class AuthService {
         newUser.setRole(UserRole.USER.toString());
         newUser.setCreatedDate(LocalDate.now());
         String token = String.format("%06d", new Random().nextInt(1000000));
-        mailService.sendVerificationEmail(newUser.getEmail(), token);
         newUser.setToken(token);
         newUser.setVerified(false);
         newUser.setTokenExpiryDate(LocalDate.now().plusDays(1));
         user.setToken(token);
-        userRepository.save(newUser);
+        try {
+            userRepository.save(newUser);
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+        mailService.sendVerificationEmail(newUser.getEmail(), token);
         return true;
     }
 
@@ -0,0 +1,411 @@
+package juancarlos.tfg.teleprompter.services;
+
+import juancarlos.tfg.teleprompter.models.StoredBlob;
+import juancarlos.tfg.teleprompter.repositories.StoredBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Service class that handles the content-addressed upload store.
+ * Uploaded files are hashed while they are written, stored once per SHA-256 digest and
+ * reference counted, so identical uploads share a single copy on disk. The extracted text of
+ * each file is cached next to it, so identical uploads are only parsed once.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class BlobStoreService {
+
+    private static final String TEXT_SUFFIX = ".txt";
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    private final StoredBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final FileReclamationService fileReclamationService;
+    private final Path root;
+
+    /**
+     * Constructs a new BlobStoreService.
+     *
+     * @param blobRepository The repository for stored file reference counts
+     * @param transactionTemplate The template used to update reference counts atomically
+     * @param fileReclamationService The worker that deletes unreferenced files
+     * @param blobDir The directory where stored files are kept
+     */
+    public BlobStoreService(StoredBlobRepository blobRepository,
+                            TransactionTemplate transactionTemplate,
+                            FileReclamationService fileReclamationService,
+                            @Value("${teleprompter.storage.blob-dir:blobs}") String blobDir) {
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.fileReclamationService = fileReclamationService;
+        this.root = Paths.get(blobDir);
+    }
+
+    /**
+     * Stores an uploaded file and takes a reference to it.
+     * If a file with the same content is already stored, the new copy is discarded.
+     *
+     * @param file The uploaded file
+     * @return The SHA-256 digest identifying the stored file
+     * @throws IOException if an I/O error occurs while storing the file
+     */
+    public String store(MultipartFile file) throws IOException {
+        Path incoming = Files.createDirectories(root.resolve("incoming"));
+        Path temp = Files.createTempFile(incoming, "upload-", ".tmp");
+        try {
+            MessageDigest sha256 = newDigest();
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), sha256)) {
+                size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            String digest = HexFormat.of().formatHex(sha256.digest());
+            Path target = pathOf(digest);
+            Files.createDirectories(target.getParent());
+
+            try {
+                acquire(digest, size, temp, target);
+            } catch (DataIntegrityViolationException e) {
+                log.info("Blob {} was stored concurrently, retrying reference", digest);
+                acquire(digest, size, temp, target);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return digest;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Releases a reference to a stored file.
+     * Joins the caller's transaction; the file and its cached text are deleted once the
+     * transaction has committed and no document references them anymore.
+     *
+     * @param digest The SHA-256 digest of the stored file
+     */
+    public void release(String digest) {
+        fileReclamationService.reclaimAfterCommit(pathsOf(releaseAll(List.of(digest))), this::deleteIfUnreferenced);
+    }
+
+    /**
+     * Releases many references to stored files at once, without deleting any file.
+     * Joins the caller's transaction, so the reference counts only change if it commits; the
+     * returned files must then be handed to {@link #reclaim(Collection)} by the caller. Digests
+     * are locked in sorted order, so concurrent releases cannot deadlock.
+     *
+     * @param digests The SHA-256 digests of the stored files, once per released reference
+     * @return The digests of the stored files that no document references anymore
+     */
+    public List<String> releaseAll(Collection<String> digests) {
+        Map<String, Integer> counts = new TreeMap<>();
+        digests.forEach(digest -> counts.merge(digest, 1, Integer::sum));
+
+        return transactionTemplate.execute(status -> {
+            List<String> unreferenced = new ArrayList<>();
+            counts.forEach((digest, count) -> {
+                Optional<StoredBlob> blob = blobRepository.findForUpdate(digest);
+                if (blob.isEmpty()) {
+                    log.warn("Released blob {} is not stored", digest);
+                    return;
+                }
+
+                int remaining = blob.get().getReferenceCount() - count;
+                if (remaining > 0) {
+                    blob.get().setReferenceCount(remaining);
+                    return;
+                }
+
+                blobRepository.delete(blob.get());
+                unreferenced.add(digest);
+            });
+            return unreferenced;
+        });
+    }
+
+    /**
+     * Queues stored files released by {@link #releaseAll(Collection)} for deletion.
+     * A file is only deleted if it has not been stored again in the meantime.
+     *
+     * @param digests The SHA-256 digests of the stored files
+     */
+    public void reclaim(Collection<String> digests) {
+        fileReclamationService.reclaim(pathsOf(digests), this::deleteIfUnreferenced);
+    }
+
+    /**
+     * Queues the files in the store that no stored_blob row references for deletion.
+     * Such files are left behind when the application stops before the reclamation worker
+     * has deleted them, or when an upload fails halfway. Files modified after the threshold
+     * are kept, since their upload may not have committed yet.
+     *
+     * @param threshold The time before which a file must have been last modified to be deleted
+     * @param limit The maximum number of files checked
+     * @param deadline The time after which no more files are checked
+     * @return The number of queued files
+     */
+    public int reclaimOrphans(Instant threshold, int limit, Instant deadline) {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+
+        int checked = 0;
+        List<Path> orphans = new ArrayList<>();
+        List<Path> stale = new ArrayList<>();
+        Map<String, List<Path>> batch = new HashMap<>();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard, Files::isRegularFile)) {
+                    for (Path file : files) {
+                        if (checked++ == limit || !Instant.now().isBefore(deadline)) {
+                            orphans.addAll(unreferenced(batch, threshold));
+                            return reclaimOrphans(orphans, stale);
+                        }
+                        if (!isOlder(file, threshold)) {
+                            continue;
+                        }
+                        if (shard.getFileName().toString().equals("incoming")) {
+                            stale.add(file);
+                            continue;
+                        }
+                        String name = file.getFileName().toString();
+                        String digest = name.endsWith(TEXT_SUFFIX) ? name.substring(0, name.length() - TEXT_SUFFIX.length()) : name;
+                        batch.computeIfAbsent(digest, key -> new ArrayList<>()).add(file);
+                        if (batch.size() >= LOOKUP_BATCH_SIZE) {
+                            orphans.addAll(unreferenced(batch, threshold));
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+            orphans.addAll(unreferenced(batch, threshold));
+        } catch (IOException e) {
+            log.error("Error listing stored files", e);
+        }
+        return reclaimOrphans(orphans, stale);
+    }
+
+    /**
+     * Queues unreferenced stored files and stale partial uploads for deletion.
+     *
+     * @param orphans The stored files without a stored_blob row
+     * @param stale The partial uploads left in the incoming directory
+     * @return The number of queued files
+     */
+    private int reclaimOrphans(List<Path> orphans, List<Path> stale) {
+        fileReclamationService.reclaim(orphans, this::deleteIfUnreferenced);
+        fileReclamationService.reclaim(stale);
+        return orphans.size() + stale.size();
+    }
+
+    /**
+     * Deletes a stored file, or its cached text, unless the file has been stored again.
+     * The check locks the stored_blob row of the digest, or the gap where it would be, so an
+     * upload of the same content waits until the file is gone; uploads insert the row before
+     * they move the file into place.
+     *
+     * @param path The stored file or its cached text
+     * @throws IOException if the file cannot be deleted
+     */
+    private void deleteIfUnreferenced(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        String digest = name.endsWith(TEXT_SUFFIX) ? name.substring(0, name.length() - TEXT_SUFFIX.length()) : name;
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (blobRepository.findForUpdate(digest).isPresent()) {
+                    log.info("Blob {} was stored again, keeping {}", digest, path);
+                    return;
+                }
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the paths of stored files and of their cached texts.
+     *
+     * @param digests The SHA-256 digests of the stored files
+     * @return The paths
+     */
+    private List<Path> pathsOf(Collection<String> digests) {
+        List<Path> paths = new ArrayList<>(digests.size() * 2);
+        for (String digest : digests) {
+            paths.add(pathOf(digest));
+            paths.add(textPathOf(digest));
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the files of a batch whose digest has no stored_blob row.
+     *
+     * @param files The files to check, by digest
+     * @param threshold The time before which a file must have been last modified to be deleted
+     * @return The unreferenced files
+     */
+    private List<Path> unreferenced(Map<String, List<Path>> files, Instant threshold) {
+        if (files.isEmpty()) {
+            return List.of();
+        }
+        Set<String> existing = new HashSet<>(blobRepository.findExistingDigests(files.keySet()));
+        List<Path> orphans = new ArrayList<>();
+        files.forEach((digest, paths) -> {
+            if (!existing.contains(digest)) {
+                paths.stream().filter(path -> isOlder(path, threshold)).forEach(orphans::add);
+            }
+        });
+        return orphans;
+    }
+
+    /**
+     * Checks whether a file was last modified before a given time.
+     *
+     * @param file The file
+     * @param threshold The time to compare with
+     * @return true if the file is older than the threshold, false if it is newer or cannot be read
+     */
+    private static boolean isOlder(Path file, Instant threshold) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(threshold);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the path of a stored file.
+     *
+     * @param digest The SHA-256 digest of the stored file
+     * @return The path where the file is stored
+     */
+    public Path pathOf(String digest) {
+        return root.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * Returns the text previously extracted from a stored file.
+     *
+     * @param digest The SHA-256 digest of the stored file
+     * @return The cached text, or null if the text of the file has not been cached
+     */
+    public String cachedText(String digest) {
+        Path textPath = textPathOf(digest);
+        if (!Files.exists(textPath)) {
+            return null;
+        }
+        try {
+            return Files.readString(textPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Error reading cached text of blob {}", digest, e);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the text extracted from a stored file.
+     *
+     * @param digest The SHA-256 digest of the stored file
+     * @param text The extracted text
+     */
+    public void cacheText(String digest, String text) {
+        Path textPath = textPathOf(digest);
+        try {
+            Path temp = Files.createTempFile(textPath.getParent(), digest, ".tmp");
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            Files.move(temp, textPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Error caching text of blob {}", digest, e);
+        }
+    }
+
+    /**
+     * Takes a reference to a stored file, moving the new copy into place if it is the first one.
+     * A new row is inserted before the file is moved, so a pending deletion of an earlier copy
+     * either finishes first or sees the row and keeps the file.
+     *
+     * @param digest The SHA-256 digest of the file
+     * @param size The size of the file in bytes
+     * @param temp The temporary copy of the upload
+     * @param target The path where the file is stored
+     */
+    private void acquire(String digest, long size, Path temp, Path target) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Optional<StoredBlob> existing = blobRepository.findForUpdate(digest);
+            if (existing.isPresent()) {
+                existing.get().setReferenceCount(existing.get().getReferenceCount() + 1);
+                if (!Files.exists(target)) {
+                    moveIntoPlace(temp, target);
+                }
+                log.info("Upload matches stored blob {}, references: {}", digest, existing.get().getReferenceCount());
+                return;
+            }
+
+            StoredBlob blob = new StoredBlob();
+            blob.setDigest(digest);
+            blob.setSize(size);
+            blob.setReferenceCount(1);
+            blob.setCreatedDate(LocalDate.now());
+            blobRepository.saveAndFlush(blob);
+            moveIntoPlace(temp, target);
+            log.info("Stored new blob {} ({} bytes)", digest, size);
+        });
+    }
+
+    private Path textPathOf(String digest) {
+        Path path = pathOf(digest);
+        return path.resolveSibling(digest + TEXT_SUFFIX);
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package juancarlos.tfg.teleprompter.services;
+
+import jakarta.annotation.PreDestroy;
+import juancarlos.tfg.teleprompter.models.SegmentTranslation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Service class that translates long lists of sentences in chunks.
+ * Groups consecutive sentences into chunks that fit a token budget, translates the chunks
+ * concurrently, and returns the translations in order. Transport failures are retried by the
+ * {@link AiHttpClient} within its deadline; a chunk that still fails, for example because the
+ * model answered with the wrong number of segments, is sent once more on its own, and the
+ * chunks that succeeded are kept either way. Short chunks go through the
+ * {@link MicroBatchTranslationService}, which merges them with other concurrent requests.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class ChunkedTranslationService {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final MicroBatchTranslationService microBatchTranslationService;
+    private final ExecutorService executor;
+    private final int chunkChars;
+
+    /**
+     * Constructs a new ChunkedTranslationService.
+     *
+     * @param microBatchTranslationService The service used to translate each chunk
+     * @param chunkTokens The approximate maximum number of tokens per chunk
+     * @param parallelism The maximum number of chunks translated at the same time
+     */
+    public ChunkedTranslationService(MicroBatchTranslationService microBatchTranslationService,
+                                     @Value("${teleprompter.translation.chunk-tokens:1500}") int chunkTokens,
+                                     @Value("${teleprompter.translation.parallelism:4}") int parallelism) {
+        this.microBatchTranslationService = microBatchTranslationService;
+        this.chunkChars = chunkTokens * CHARS_PER_TOKEN;
+        this.executor = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform().name("translation-", 0).factory());
+    }
+
+    /**
+     * Translates a list of sentences to the target language.
+     * A single chunk is translated on the calling thread, so short requests do not queue
+     * for the workers and can be batched with each other. Chunks may be answered by different
+     * providers, so each chunk keeps the scope it may be stored under.
+     *
+     * @param sentences The sentences to translate, in order
+     * @param targetLanguage The target language
+     * @param userName The username of the user the sentences belong to
+     * @return The chunks in order, together covering every sentence in order; the translation
+     *         of a chunk is null if it could not be translated
+     */
+    public List<Chunk> translate(List<String> sentences, String targetLanguage, String userName) {
+        List<List<String>> chunks = split(sentences);
+        log.info("Translating {} sentences in {} chunks", sentences.size(), chunks.size());
+
+        List<SegmentTranslation> results = translateAll(chunks, targetLanguage, userName);
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                failed.add(i);
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.warn("{} of {} chunks could not be translated, retrying them", failed.size(), chunks.size());
+            List<SegmentTranslation> retried = translateAll(failed.stream().map(chunks::get).toList(), targetLanguage, userName);
+            for (int i = 0; i < failed.size(); i++) {
+                results.set(failed.get(i), retried.get(i));
+            }
+            long stillFailed = retried.stream().filter(Objects::isNull).count();
+            if (stillFailed > 0) {
+                log.warn("{} of {} chunks could not be translated after a retry", stillFailed, chunks.size());
+            }
+        }
+
+        List<Chunk> translated = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            translated.add(new Chunk(chunks.get(i), results.get(i)));
+        }
+        return translated;
+    }
+
+    /**
+     * Translates chunks concurrently.
+     * A single chunk is translated on the calling thread.
+     *
+     * @param chunks The chunks to translate
+     * @param targetLanguage The target language
+     * @param userName The username of the user the sentences belong to
+     * @return The translations of the chunks in order, null for the chunks that failed
+     */
+    private List<SegmentTranslation> translateAll(List<List<String>> chunks, String targetLanguage, String userName) {
+        List<CompletableFuture<SegmentTranslation>> futures = new ArrayList<>(chunks.size());
+        for (List<String> chunk : chunks) {
+            futures.add(chunks.size() == 1
+                    ? CompletableFuture.completedFuture(microBatchTranslationService.translate(chunk, targetLanguage, userName))
+                    : CompletableFuture.supplyAsync(() -> microBatchTranslationService.translate(chunk, targetLanguage, userName), executor));
+        }
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Groups consecutive sentences into chunks that fit the chunk budget.
+     * A sentence longer than the budget gets a chunk of its own.
+     *
+     * @param sentences The sentences to group
+     * @return The chunks in order
+     */
+    List<List<String>> split(List<String> sentences) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int length = 0;
+        for (String sentence : sentences) {
+            if (length + sentence.length() > chunkChars && !chunk.isEmpty()) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                length = 0;
+            }
+            chunk.add(sentence);
+            length += sentence.length();
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Stops the translation workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A chunk of consecutive sentences and its translation.
+     *
+     * @param sentences The source sentences, in order
+     * @param translation The translation of the sentences, or null if they could not be translated
+     */
+    public record Chunk(List<String> sentences, SegmentTranslation translation) {
+    }
+}
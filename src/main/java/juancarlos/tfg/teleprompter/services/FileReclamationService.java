@@ -0,0 +1,217 @@
+package juancarlos.tfg.teleprompter.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that deletes files and directories in the background.
+ * Callers remove the database rows first and hand the paths over once the transaction has
+ * committed, so requests do not wait for the file system. Deletions that fail, for example
+ * because a file is still open, are retried with an increasing delay. Pending deletions only
+ * live in memory; files left behind by a restart are found by the nightly cleanup job, which
+ * deletes the stored files without a stored_blob row and the upload directories of deleted users.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class FileReclamationService {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("file-reclamation").daemon().factory());
+    private final Counter reclaimed;
+    private final Counter abandoned;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+
+    /**
+     * Constructs a new FileReclamationService.
+     *
+     * @param meterRegistry The registry the reclamation metrics are published to
+     * @param maxAttempts The maximum number of attempts to delete a path
+     * @param retryDelayMs The delay before the first retry in milliseconds, doubled on every retry
+     */
+    public FileReclamationService(MeterRegistry meterRegistry,
+                                  @Value("${teleprompter.reclamation.max-attempts:5}") int maxAttempts,
+                                  @Value("${teleprompter.reclamation.retry-delay-ms:1000}") long retryDelayMs) {
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        this.reclaimed = meterRegistry.counter("teleprompter.reclamation.paths", "result", "deleted");
+        this.abandoned = meterRegistry.counter("teleprompter.reclamation.paths", "result", "abandoned");
+    }
+
+    /**
+     * Queues files or directories for deletion. Directories are deleted with all their contents,
+     * and paths that no longer exist are ignored.
+     *
+     * @param paths The paths to delete
+     */
+    public void reclaim(Collection<Path> paths) {
+        reclaim(paths, FileReclamationService::deleteRecursively);
+    }
+
+    /**
+     * Queues paths for deletion by a custom deleter, which may check whether a path is
+     * still needed right before deleting it.
+     *
+     * @param paths The paths to delete
+     * @param deleter The deleter called for each path
+     */
+    public void reclaim(Collection<Path> paths, Deleter deleter) {
+        for (Path path : paths) {
+            schedule(path, deleter, 1, 0);
+        }
+    }
+
+    /**
+     * Queues files or directories for deletion once the current transaction has committed.
+     * Nothing is deleted if the transaction rolls back; without a transaction, the paths are
+     * queued right away.
+     *
+     * @param paths The paths to delete
+     */
+    public void reclaimAfterCommit(Collection<Path> paths) {
+        reclaimAfterCommit(paths, FileReclamationService::deleteRecursively);
+    }
+
+    /**
+     * Queues paths for deletion by a custom deleter once the current transaction has committed.
+     *
+     * @param paths The paths to delete
+     * @param deleter The deleter called for each path
+     */
+    public void reclaimAfterCommit(Collection<Path> paths, Deleter deleter) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            reclaim(paths, deleter);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                reclaim(paths, deleter);
+            }
+        });
+    }
+
+    /**
+     * Schedules an attempt to delete a path.
+     *
+     * @param path The path to delete
+     * @param deleter The deleter of the path
+     * @param attempt The number of the attempt, starting at 1
+     * @param delayMs The delay before the attempt in milliseconds
+     */
+    private void schedule(Path path, Deleter deleter, int attempt, long delayMs) {
+        try {
+            executor.schedule(() -> delete(path, deleter, attempt), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("File reclamation is shut down, {} was not deleted", path);
+        }
+    }
+
+    /**
+     * Deletes a path, scheduling a retry if it fails.
+     *
+     * @param path The path to delete
+     * @param deleter The deleter of the path
+     * @param attempt The number of the attempt, starting at 1
+     */
+    private void delete(Path path, Deleter deleter, int attempt) {
+        try {
+            deleter.delete(path);
+            reclaimed.increment();
+            log.info("Deleted {}", path);
+        } catch (IOException | RuntimeException e) {
+            if (attempt >= maxAttempts) {
+                abandoned.increment();
+                log.error("Giving up deleting {} after {} attempts", path, attempt, e);
+                return;
+            }
+            long delayMs = retryDelayMs << (attempt - 1);
+            log.warn("Could not delete {}, retrying in {} ms: {}", path, delayMs, e.getMessage());
+            schedule(path, deleter, attempt + 1, delayMs);
+        }
+    }
+
+    /**
+     * Deletes a file, or a directory and everything inside it.
+     * Entries that disappear while the tree is walked are ignored.
+     *
+     * @param path The path to delete
+     * @throws IOException if a file or directory cannot be deleted
+     */
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Stops the reclamation worker when the application shuts down.
+     * Deletions still waiting are dropped and picked up by the next cleanup run.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Deletes a path for the reclamation worker.
+     */
+    @FunctionalInterface
+    public interface Deleter {
+
+        /**
+         * Deletes a path, or leaves it in place if it turns out to be still needed.
+         *
+         * @param path The path to delete
+         * @throws IOException if the path cannot be deleted; the deletion is retried
+         */
+        void delete(Path path) throws IOException;
+    }
+}
@@ -0,0 +1,191 @@
+package juancarlos.tfg.teleprompter.services;
+
+import jakarta.annotation.PreDestroy;
+import juancarlos.tfg.teleprompter.enums.IngestionStatus;
+import juancarlos.tfg.teleprompter.models.CurrentPrincipal;
+import juancarlos.tfg.teleprompter.models.IngestionJob;
+import juancarlos.tfg.teleprompter.models.Teleprompter;
+import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
+import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that handles asynchronous ingestion of uploaded teleprompter files.
+ * Stores the upload and the teleprompter document on the request thread, and extracts
+ * the content on a bounded worker pool so request latency does not depend on document size.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class IngestionService {
+
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    private final TelePrompterService telePrompterService;
+    private final ScriptContentService scriptContentService;
+    private final PrompterRepository prompterRepository;
+    private final UserRepository userRepository;
+    private final PrincipalCacheService principalCacheService;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new IngestionService with a bounded extraction pool.
+     *
+     * @param telePrompterService The service used to store uploads and extract their content
+     * @param scriptContentService The service used to store the extracted content
+     * @param prompterRepository The repository for teleprompter operations
+     * @param userRepository The repository for user operations
+     * @param principalCacheService The cache used to resolve the owner of new documents
+     * @param workers The number of extraction workers
+     * @param queueCapacity The number of jobs that can wait for a worker
+     */
+    public IngestionService(TelePrompterService telePrompterService,
+                            ScriptContentService scriptContentService,
+                            PrompterRepository prompterRepository,
+                            UserRepository userRepository,
+                            PrincipalCacheService principalCacheService,
+                            @Value("${teleprompter.ingestion.workers:4}") int workers,
+                            @Value("${teleprompter.ingestion.queue-capacity:50}") int queueCapacity) {
+        this.telePrompterService = telePrompterService;
+        this.scriptContentService = scriptContentService;
+        this.prompterRepository = prompterRepository;
+        this.userRepository = userRepository;
+        this.principalCacheService = principalCacheService;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("ingestion-", 0).factory());
+    }
+
+    /**
+     * Stores the uploaded file and the teleprompter document, and queues the content extraction.
+     *
+     * @param telePrompter The teleprompter object containing document details and the uploaded file
+     * @param userName The username of the user creating the teleprompter
+     * @return The submitted job, or null if the user was not found or the teleprompter already exists
+     */
+    public IngestionJob submit(Teleprompter telePrompter, String userName) {
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
+
+        if (owner == null || prompterRepository.findByNameAndUserId(telePrompter.getName(), owner.getId()).isPresent()) {
+            log.warn("User not found or teleprompter already exists");
+            return null;
+        }
+
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), userName);
+        jobs.put(job.getId(), job);
+
+        try {
+            telePrompterService.storeUpload(telePrompter);
+        } catch (IOException e) {
+            log.error("Error storing uploaded file", e);
+            job.fail("Error storing uploaded file");
+            return job;
+        }
+
+        String contentType = telePrompter.getFile().getContentType();
+        telePrompter.setCreatedDate(LocalDate.now());
+        telePrompter.setUser(userRepository.getReferenceById(owner.getId()));
+        Teleprompter saved;
+        try {
+            saved = prompterRepository.save(telePrompter);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Teleprompter {} already exists", telePrompter.getName());
+            jobs.remove(job.getId());
+            telePrompterService.releaseUpload(telePrompter);
+            return null;
+        }
+        job.setTeleprompterId(saved.getId());
+
+        try {
+            executor.execute(() -> extract(job, saved, contentType));
+            log.info("Ingestion job {} queued for teleprompter {}", job.getId(), saved.getId());
+        } catch (RejectedExecutionException e) {
+            log.warn("Ingestion queue is full, rejecting job {}", job.getId());
+            telePrompterService.discard(saved);
+            job.fail("Ingestion queue is full, try again later");
+        }
+        return job;
+    }
+
+    /**
+     * Retrieves an ingestion job owned by a user.
+     *
+     * @param id The ID of the job
+     * @param userName The username of the user
+     * @return The job if found and owned by the user, null otherwise
+     */
+    public IngestionJob getJob(String id, String userName) {
+        IngestionJob job = jobs.get(id);
+        if (job == null || !job.getUsername().equals(userName)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Extracts the content of a stored upload and saves it to the teleprompter document.
+     * If the extraction fails, the document is deleted and its upload released, so no
+     * document is left without content.
+     *
+     * @param job The job being processed
+     * @param telePrompter The teleprompter document whose upload was stored
+     * @param contentType The MIME type of the upload
+     */
+    private void extract(IngestionJob job, Teleprompter telePrompter, String contentType) {
+        job.setStatus(IngestionStatus.EXTRACTING);
+        try {
+            String content = telePrompterService.extractContent(telePrompter, contentType, job::setProgress);
+            if (content == null) {
+                telePrompterService.discard(telePrompter);
+                job.fail("Could not extract content from file");
+                return;
+            }
+
+            if (!scriptContentService.attach(job.getTeleprompterId(), content)) {
+                job.fail("Prompter was deleted before extraction finished");
+                return;
+            }
+
+            log.info("Ingestion job {} completed, content length: {}", job.getId(), content.length());
+            job.complete();
+        } catch (Exception e) {
+            log.error("Error processing ingestion job " + job.getId(), e);
+            job.fail("Error extracting content from file");
+            telePrompterService.discard(telePrompter);
+        }
+    }
+
+    /**
+     * Scheduled task that forgets jobs finished more than an hour ago.
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void evictFinishedJobs() {
+        Instant threshold = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+
+    /**
+     * Stops accepting new jobs when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
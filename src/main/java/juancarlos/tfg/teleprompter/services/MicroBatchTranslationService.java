@@ -0,0 +1,262 @@
+package juancarlos.tfg.teleprompter.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import juancarlos.tfg.teleprompter.models.SegmentTranslation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that merges short translation requests into shared model calls.
+ * Short segment lists are collected per user and target language for a few milliseconds, or until
+ * the batch reaches its token budget, and sent as a single multi-segment request. The translated
+ * segments are then handed back to each caller by position. Texts of different users are never
+ * mixed, since the model reports a single original language for the whole batch. Long segment
+ * lists are translated directly, since they already fill a request on their own. Callers wait
+ * at most for a batch call and the retry of its requests one by one.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class MicroBatchTranslationService {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final AiApiCallService aiApiCallService;
+    private final DistributionSummary batchSizes;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("translation-batch-timer").daemon().factory());
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("translation-batch-", 0).factory());
+    private final Map<BatchKey, Batch> open = new HashMap<>();
+    private final long windowMs;
+    private final long timeoutMs;
+    private final int maxBatchChars;
+    private final int maxItemChars;
+
+    /**
+     * Constructs a new MicroBatchTranslationService.
+     *
+     * @param aiApiCallService The service used to translate each batch
+     * @param meterRegistry The registry the batch metrics are published to
+     * @param windowMs How long a batch collects requests before it is sent, in milliseconds
+     * @param maxBatchTokens The approximate maximum number of tokens per batch
+     * @param maxItemTokens The approximate maximum number of tokens of a request that may be batched
+     * @param deadlineMs The time allowed for a single AI request including its retries, in milliseconds
+     */
+    public MicroBatchTranslationService(AiApiCallService aiApiCallService, MeterRegistry meterRegistry,
+                                        @Value("${teleprompter.translation.batch.window-ms:20}") long windowMs,
+                                        @Value("${teleprompter.translation.batch.max-tokens:1000}") int maxBatchTokens,
+                                        @Value("${teleprompter.translation.batch.max-item-tokens:250}") int maxItemTokens,
+                                        @Value("${teleprompter.ai.deadline-ms:90000}") long deadlineMs) {
+        this.aiApiCallService = aiApiCallService;
+        this.windowMs = windowMs;
+        this.timeoutMs = windowMs + 2 * deadlineMs;
+        this.maxBatchChars = maxBatchTokens * CHARS_PER_TOKEN;
+        this.maxItemChars = maxItemTokens * CHARS_PER_TOKEN;
+        this.batchSizes = DistributionSummary.builder("teleprompter.translation.batch.size")
+                .description("Translation requests merged into a single model call")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Translates a list of segments, sharing the model call with other short requests
+     * of the same user for the same target language. Blocks until the translation is available.
+     * The detected original language is the one reported for the whole batch.
+     *
+     * @param segments The segments to translate
+     * @param targetLanguage The target language
+     * @param userName The username of the user the segments belong to
+     * @return The translated segments in the same order, or null if the translation failed or timed out
+     */
+    public SegmentTranslation translate(List<String> segments, String targetLanguage, String userName) {
+        int chars = segments.stream().mapToInt(String::length).sum();
+        if (chars > maxItemChars) {
+            return aiApiCallService.translateSegments(segments, targetLanguage);
+        }
+
+        BatchKey key = new BatchKey(userName, targetLanguage);
+        Pending pending = new Pending(segments);
+        Batch ready = null;
+        Batch created = null;
+        synchronized (open) {
+            Batch batch = open.get(key);
+            if (batch == null || batch.chars + chars > maxBatchChars) {
+                ready = batch;
+                batch = new Batch(key);
+                open.put(key, batch);
+                created = batch;
+            }
+            batch.items.add(pending);
+            batch.chars += chars;
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+        if (created != null) {
+            schedule(created);
+        }
+
+        try {
+            return pending.result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            log.warn("Batched translation failed: {}", e.getCause().toString());
+            return null;
+        }
+    }
+
+    /**
+     * Schedules the sending of a batch at the end of its collection window.
+     * Sends it right away if the timer is shut down.
+     *
+     * @param batch The batch
+     */
+    private void schedule(Batch batch) {
+        try {
+            scheduler.schedule(() -> flush(batch), windowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Sends a batch once its collection window has ended, unless it was already sent because it was full.
+     *
+     * @param batch The batch
+     */
+    private void flush(Batch batch) {
+        synchronized (open) {
+            if (!open.remove(batch.key, batch)) {
+                return;
+            }
+        }
+        dispatch(batch);
+    }
+
+    /**
+     * Hands a batch over to a worker thread, failing its requests if the workers are shut down.
+     *
+     * @param batch The batch
+     */
+    private void dispatch(Batch batch) {
+        try {
+            executor.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            batch.items.forEach(item -> item.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Translates all the segments of a batch in one request and splits the result among the callers.
+     * When a batch of several requests fails, each request is retried on its own, so a single
+     * problematic text does not fail the others.
+     *
+     * @param batch The batch
+     */
+    private void send(Batch batch) {
+        batchSizes.record(batch.items.size());
+        List<String> segments = new ArrayList<>();
+        batch.items.forEach(item -> segments.addAll(item.segments));
+
+        SegmentTranslation translation = null;
+        try {
+            translation = aiApiCallService.translateSegments(segments, batch.key.targetLanguage());
+        } catch (RuntimeException e) {
+            log.error("Batch translation failed", e);
+        }
+
+        if (translation == null) {
+            if (batch.items.size() == 1) {
+                batch.items.get(0).result.complete(null);
+                return;
+            }
+            log.warn("Batch of {} requests failed, translating them one by one", batch.items.size());
+            for (Pending item : batch.items) {
+                try {
+                    executor.execute(() -> item.result.complete(aiApiCallService.translateSegments(item.segments, batch.key.targetLanguage())));
+                } catch (RejectedExecutionException e) {
+                    item.result.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        int offset = 0;
+        for (Pending item : batch.items) {
+            List<String> translated = new ArrayList<>(translation.getSegments().subList(offset, offset + item.segments.size()));
+            offset += item.segments.size();
+            item.result.complete(new SegmentTranslation(translated, translation.getOriginalLanguage(), translation.getCacheScope()));
+        }
+    }
+
+    /**
+     * Stops the batch workers when the application shuts down, failing the requests still waiting.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        RejectedExecutionException shutDown = new RejectedExecutionException("Translation batching is shut down");
+        synchronized (open) {
+            open.values().forEach(batch -> batch.items.forEach(item -> item.result.completeExceptionally(shutDown)));
+            open.clear();
+        }
+    }
+
+    /**
+     * Identifies the batch a request may join.
+     *
+     * @param userName The username of the user the segments belong to
+     * @param targetLanguage The target language
+     */
+    private record BatchKey(String userName, String targetLanguage) {
+    }
+
+    /**
+     * Requests collected for one user and target language.
+     */
+    private static class Batch {
+        private final BatchKey key;
+        private final List<Pending> items = new ArrayList<>();
+        private int chars;
+
+        /**
+         * Creates an empty batch.
+         *
+         * @param key The user and target language of the batch
+         */
+        Batch(BatchKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A request waiting for its batch to be translated.
+     */
+    private static class Pending {
+        private final List<String> segments;
+        private final CompletableFuture<SegmentTranslation> result = new CompletableFuture<>();
+
+        /**
+         * Creates a waiting request.
+         *
+         * @param segments The segments to translate
+         */
+        Pending(List<String> segments) {
+            this.segments = segments;
+        }
+    }
+}
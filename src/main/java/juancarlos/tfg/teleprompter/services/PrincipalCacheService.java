@@ -0,0 +1,91 @@
+package juancarlos.tfg.teleprompter.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import juancarlos.tfg.teleprompter.models.CurrentPrincipal;
+import juancarlos.tfg.teleprompter.models.User;
+import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Service class that resolves usernames to principals.
+ * Keeps the id, role and verification flag of recently active users in a size-bounded in-memory cache,
+ * so authorization checks do not query the users table on every request. Entries are invalidated when
+ * a user is updated or deleted, and expire after a short time so changes made by other instances are
+ * picked up as well.
+ *
+ * @author Juan Carlos
+ */
+@Service
+public class PrincipalCacheService {
+
+    private final UserRepository userRepository;
+    private final Cache<String, CurrentPrincipal> principals;
+
+    /**
+     * Constructs a new PrincipalCacheService.
+     *
+     * @param userRepository The repository used to load users missing from the cache
+     * @param meterRegistry The registry the cache metrics are published to
+     * @param maxEntries The maximum number of principals kept in memory
+     * @param ttlSeconds The number of seconds a principal is reused before it is loaded again
+     */
+    public PrincipalCacheService(UserRepository userRepository, MeterRegistry meterRegistry,
+                                 @Value("${teleprompter.auth.principal-cache.max-entries:10000}") long maxEntries,
+                                 @Value("${teleprompter.auth.principal-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principal");
+    }
+
+    /**
+     * Resolves a username to its principal, loading it from the database on a cache miss.
+     * Unknown usernames are not cached.
+     *
+     * @param username The username to resolve
+     * @return The principal, or null if the username is null or no such user exists
+     */
+    public CurrentPrincipal resolve(String username) {
+        if (username == null) {
+            return null;
+        }
+        return principals.get(username, key -> userRepository.findByUsername(key).map(this::toPrincipal).orElse(null));
+    }
+
+    /**
+     * Removes a user from the cache, so the next request loads it again.
+     *
+     * @param username The username of the user that changed
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            principals.invalidate(username);
+        }
+    }
+
+    /**
+     * Removes every user from the cache. Used after bulk changes to the users table.
+     */
+    public void invalidateAll() {
+        principals.invalidateAll();
+    }
+
+    /**
+     * Builds the principal of a user.
+     *
+     * @param user The user
+     * @return The principal
+     */
+    private CurrentPrincipal toPrincipal(User user) {
+        return new CurrentPrincipal(user.getId(), user.getUsername(), user.getRole(), user.isVerified());
+    }
+}
@@ -0,0 +1,233 @@
+package juancarlos.tfg.teleprompter.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import juancarlos.tfg.teleprompter.enums.ControlCommand;
+import juancarlos.tfg.teleprompter.models.PrompterControlMessage;
+import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that fans out live prompter control commands to every display of a teleprompter.
+ * Channels live in memory and only the scroll speed is checkpointed to the database,
+ * periodically and when the last display of a channel leaves, never on every command.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+public class PrompterControlHub {
+
+    private static final int SEND_TIME_LIMIT_MS = 1000;
+    private static final int SEND_BUFFER_LIMIT = 64 * 1024;
+
+    private final PrompterRepository prompterRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribes a display to the channel of a teleprompter and sends it the current state.
+     *
+     * @param teleprompterId The ID of the teleprompter
+     * @param session The WebSocket session of the display
+     * @param speed The stored speed of the teleprompter, used if the channel is not open yet
+     */
+    public void join(Long teleprompterId, WebSocketSession session, Integer speed) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT);
+        Channel channel = channels.compute(teleprompterId, (id, existing) -> {
+            Channel joined = existing != null ? existing : new Channel(speed);
+            joined.sessions.put(session.getId(), decorated);
+            return joined;
+        });
+
+        for (PrompterControlMessage message : channel.snapshot()) {
+            send(decorated, toText(message));
+        }
+    }
+
+    /**
+     * Applies a command to the channel of a teleprompter and forwards it to every other display.
+     *
+     * @param teleprompterId The ID of the teleprompter
+     * @param sender The WebSocket session that sent the command
+     * @param message The command
+     */
+    public void broadcast(Long teleprompterId, WebSocketSession sender, PrompterControlMessage message) {
+        Channel channel = channels.get(teleprompterId);
+        if (channel == null) {
+            return;
+        }
+
+        channel.apply(message);
+        TextMessage text = toText(message);
+        channel.sessions.forEach((sessionId, session) -> {
+            if (!sessionId.equals(sender.getId())) {
+                send(session, text);
+            }
+        });
+    }
+
+    /**
+     * Unsubscribes a display, checkpointing and closing the channel when it was the last one.
+     *
+     * @param teleprompterId The ID of the teleprompter
+     * @param session The WebSocket session of the display
+     */
+    public void leave(Long teleprompterId, WebSocketSession session) {
+        Channel[] closed = new Channel[1];
+        channels.computeIfPresent(teleprompterId, (id, channel) -> {
+            channel.sessions.remove(session.getId());
+            if (channel.sessions.isEmpty()) {
+                closed[0] = channel;
+                return null;
+            }
+            return channel;
+        });
+
+        if (closed[0] != null) {
+            checkpoint(teleprompterId, closed[0]);
+        }
+    }
+
+    /**
+     * Scheduled task that saves the speed of channels changed since the last checkpoint.
+     */
+    @Scheduled(fixedDelay = 5, timeUnit = TimeUnit.SECONDS)
+    public void checkpoint() {
+        channels.forEach(this::checkpoint);
+    }
+
+    /**
+     * Saves the speed of a channel if it changed since the last checkpoint.
+     *
+     * @param teleprompterId The ID of the teleprompter
+     * @param channel The channel
+     */
+    private void checkpoint(Long teleprompterId, Channel channel) {
+        Integer speed = channel.takeDirtySpeed();
+        if (speed == null) {
+            return;
+        }
+        try {
+            prompterRepository.updateSpeed(teleprompterId, speed);
+        } catch (RuntimeException e) {
+            log.error("Error saving speed of teleprompter " + teleprompterId, e);
+        }
+    }
+
+    /**
+     * Serializes a command to a WebSocket text message.
+     *
+     * @param message The command
+     * @return The text message
+     */
+    private TextMessage toText(PrompterControlMessage message) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize control message", e);
+        }
+    }
+
+    /**
+     * Sends a message to a display. Slow displays that exceed the buffer limit are closed
+     * by the session decorator instead of delaying the others.
+     *
+     * @param session The decorated WebSocket session
+     * @param message The message to send
+     */
+    private void send(WebSocketSession session, TextMessage message) {
+        try {
+            if (session.isOpen()) {
+                session.sendMessage(message);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not send control message to session {}", session.getId(), e);
+        }
+    }
+
+    /**
+     * In-memory state of the control channel of one teleprompter.
+     */
+    private static class Channel {
+
+        private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+        private Integer speed;
+        private Integer position;
+        private boolean playing;
+        private boolean mirrored;
+        private boolean speedDirty;
+
+        /**
+         * Creates a new channel.
+         *
+         * @param speed The initial speed
+         */
+        Channel(Integer speed) {
+            this.speed = speed;
+        }
+
+        /**
+         * Updates the state with a command.
+         *
+         * @param message The command
+         */
+        synchronized void apply(PrompterControlMessage message) {
+            switch (message.getCommand()) {
+                case SPEED -> {
+                    speed = message.getValue();
+                    speedDirty = true;
+                }
+                case POSITION -> position = message.getValue();
+                case PLAY -> playing = true;
+                case PAUSE -> playing = false;
+                case MIRROR -> mirrored = message.getValue() != 0;
+            }
+        }
+
+        /**
+         * Returns the speed if it changed since the last call, and clears the change.
+         *
+         * @return The changed speed, or null if it did not change
+         */
+        synchronized Integer takeDirtySpeed() {
+            if (!speedDirty) {
+                return null;
+            }
+            speedDirty = false;
+            return speed;
+        }
+
+        /**
+         * Describes the current state as the commands that reproduce it.
+         *
+         * @return The commands to send to a new display
+         */
+        synchronized List<PrompterControlMessage> snapshot() {
+            List<PrompterControlMessage> state = new ArrayList<>(4);
+            if (speed != null) {
+                state.add(new PrompterControlMessage(ControlCommand.SPEED, speed));
+            }
+            if (position != null) {
+                state.add(new PrompterControlMessage(ControlCommand.POSITION, position));
+            }
+            state.add(new PrompterControlMessage(playing ? ControlCommand.PLAY : ControlCommand.PAUSE, null));
+            state.add(new PrompterControlMessage(ControlCommand.MIRROR, mirrored ? 1 : 0));
+            return state;
+        }
+    }
+}
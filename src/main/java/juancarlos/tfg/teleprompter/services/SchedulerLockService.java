@@ -0,0 +1,91 @@
+package juancarlos.tfg.teleprompter.services;
+
+import juancarlos.tfg.teleprompter.models.SchedulerLock;
+import juancarlos.tfg.teleprompter.repositories.SchedulerLockRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Service class that coordinates scheduled tasks across the nodes of a cluster.
+ * Each task has a row in the scheduler_lock table; a node runs the task only after it has
+ * taken the lease of that row with a conditional update. Leases expire on their own, so a node
+ * that dies while running a task does not block it forever. Lease times rely on the clocks of
+ * the nodes, which must be roughly in sync.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class SchedulerLockService {
+
+    private final SchedulerLockRepository lockRepository;
+    private final String owner;
+
+    /**
+     * Constructs a new SchedulerLockService.
+     *
+     * @param lockRepository The repository of task leases
+     */
+    public SchedulerLockService(SchedulerLockRepository lockRepository) {
+        this.lockRepository = lockRepository;
+        this.owner = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Tries to take the lease of a task.
+     *
+     * @param name The name of the task
+     * @param leaseTime The maximum time the task is expected to run
+     * @return true if this node now holds the lease, false if another node does
+     */
+    public boolean tryLock(String name, Duration leaseTime) {
+        if (!lockRepository.existsById(name)) {
+            SchedulerLock lock = new SchedulerLock();
+            lock.setName(name);
+            lock.setLockedUntil(Instant.EPOCH);
+            try {
+                lockRepository.saveAndFlush(lock);
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Lock {} was created by another node", name);
+            }
+        }
+
+        Instant now = Instant.now();
+        boolean acquired = lockRepository.acquire(name, owner, now, now.plus(leaseTime)) == 1;
+        if (!acquired) {
+            log.info("Skipping task {}, it is running on another node", name);
+        }
+        return acquired;
+    }
+
+    /**
+     * Ends the lease of a task taken by this node.
+     *
+     * @param name The name of the task
+     */
+    public void unlock(String name) {
+        if (lockRepository.release(name, owner, Instant.now()) == 0) {
+            log.warn("Lease of task {} expired before the task finished", name);
+        }
+    }
+
+    /**
+     * Returns the name of this host, used to tell nodes apart in the lock table.
+     *
+     * @return The host name, or unknown if it cannot be resolved
+     */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
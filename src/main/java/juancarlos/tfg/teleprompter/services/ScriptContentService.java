@@ -0,0 +1,239 @@
+package juancarlos.tfg.teleprompter.services;
+
+import juancarlos.tfg.teleprompter.models.Teleprompter;
+import juancarlos.tfg.teleprompter.models.TeleprompterContent;
+import juancarlos.tfg.teleprompter.models.TeleprompterSegment;
+import juancarlos.tfg.teleprompter.models.TextEdit;
+import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
+import juancarlos.tfg.teleprompter.repositories.TeleprompterContentRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Service class that handles the compressed storage of teleprompter scripts.
+ * Compresses script text into {@link TeleprompterContent} rows and decompresses it,
+ * verifying its length and checksum, only when the text is actually needed.
+ * Also splits the script into {@link TeleprompterSegment} chunks for incremental fetching.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+public class ScriptContentService {
+
+    private static final String CODEC = "deflate";
+    private static final int SEGMENT_LENGTH = 2000;
+    private static final int MAX_SEGMENTS_PER_REQUEST = 50;
+
+    private final TeleprompterContentRepository contentRepository;
+    private final PrompterRepository prompterRepository;
+
+    /**
+     * Sets the script text of a teleprompter document in a new content row.
+     * Replacing the row changes the content_id column of the document, so every content change
+     * increments the document version; the previous row is removed as an orphan.
+     * The change is persisted when the teleprompter is saved.
+     *
+     * @param telePrompter The teleprompter document
+     * @param text The script text
+     */
+    public void write(Teleprompter telePrompter, String text) {
+        TeleprompterContent content = new TeleprompterContent();
+        encode(content, text);
+        telePrompter.setBody(content);
+    }
+
+    /**
+     * Reads the script text of a teleprompter document.
+     * Must be called while the persistence context that loaded the teleprompter is open.
+     *
+     * @param telePrompter The teleprompter document
+     * @return The script text, or null if the document has no content
+     */
+    public String read(Teleprompter telePrompter) {
+        return telePrompter.getBody() != null ? decode(telePrompter.getBody()) : null;
+    }
+
+    /**
+     * Stores the script text of an existing teleprompter document without loading it.
+     *
+     * @param teleprompterId The ID of the teleprompter document
+     * @param text The script text
+     * @return true if the content was attached, false if the document no longer exists
+     */
+    @Transactional
+    public boolean attach(Long teleprompterId, String text) {
+        TeleprompterContent content = new TeleprompterContent();
+        encode(content, text);
+        contentRepository.save(content);
+        if (prompterRepository.attachBody(teleprompterId, content) == 0) {
+            contentRepository.delete(content);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies text operations to a script text.
+     * Offsets and lengths count UTF-16 code units, as {@link String#length()} does, so a character
+     * outside the Basic Multilingual Plane, such as an emoji, takes two units.
+     *
+     * @param text The current script text
+     * @param edits The operations to apply, in order
+     * @return The edited script text
+     * @throws IllegalArgumentException if an operation is incomplete or out of bounds
+     */
+    public String applyEdits(String text, List<TextEdit> edits) {
+        StringBuilder result = new StringBuilder(text);
+        for (TextEdit edit : edits) {
+            if (edit.getOp() == null || edit.getOffset() < 0 || edit.getOffset() > result.length()) {
+                throw new IllegalArgumentException("Invalid operation: " + edit);
+            }
+            switch (edit.getOp()) {
+                case INSERT -> {
+                    if (edit.getText() == null) {
+                        throw new IllegalArgumentException("Insert without text at offset " + edit.getOffset());
+                    }
+                    result.insert(edit.getOffset(), edit.getText());
+                }
+                case DELETE -> {
+                    if (edit.getLength() < 0 || edit.getLength() > result.length() - edit.getOffset()) {
+                        throw new IllegalArgumentException("Delete out of bounds at offset " + edit.getOffset());
+                    }
+                    result.delete(edit.getOffset(), edit.getOffset() + edit.getLength());
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns a range of segments of a script text.
+     *
+     * @param segments All the segments of the script, as returned by {@link #split(String)}
+     * @param from The position of the first segment to return
+     * @param count The number of segments to return, clamped between 1 and {@value #MAX_SEGMENTS_PER_REQUEST}
+     * @return The segments ordered by position, empty if the range is past the end of the script
+     */
+    public List<TeleprompterSegment> slice(List<TeleprompterSegment> segments, int from, int count) {
+        int start = Math.min(Math.max(0, from), segments.size());
+        int limit = Math.max(1, Math.min(count, MAX_SEGMENTS_PER_REQUEST));
+        return segments.subList(start, Math.min(start + limit, segments.size()));
+    }
+
+    /**
+     * Splits a script text into segments of at most {@value #SEGMENT_LENGTH} characters.
+     * Segments end after a line break or a space when there is one in their second half,
+     * so words are not cut, and concatenating them gives back the original text.
+     * Splitting is deterministic, so the same script always yields the same segments.
+     *
+     * @param text The script text, or null if the document has no content
+     * @return The segments in order, empty if there is no text
+     */
+    public List<TeleprompterSegment> split(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        List<TeleprompterSegment> segments = new ArrayList<>(text.length() / SEGMENT_LENGTH + 1);
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(start + SEGMENT_LENGTH, text.length());
+            if (end < text.length()) {
+                end = breakBefore(text, start + SEGMENT_LENGTH / 2, end);
+            }
+            segments.add(new TeleprompterSegment(segments.size(), start, text.substring(start, end)));
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Finds where a segment should end, preferring line breaks over spaces.
+     *
+     * @param text The script text
+     * @param min The earliest acceptable end of the segment
+     * @param max The latest acceptable end of the segment
+     * @return The end of the segment, exclusive
+     */
+    private int breakBefore(String text, int min, int max) {
+        for (int i = max - 1; i >= min; i--) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        for (int i = max - 1; i >= min; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return Character.isHighSurrogate(text.charAt(max - 1)) ? max - 1 : max;
+    }
+
+    /**
+     * Compresses text into a content row.
+     * Also used by the schema migration that moves the text of old documents, so it does not
+     * depend on the state of the service.
+     *
+     * @param content The content row to fill
+     * @param text The script text
+     */
+    public static void encode(TeleprompterContent content, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, bytes.length / 3));
+        try (OutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        content.setData(compressed.toByteArray());
+        content.setUncompressedLength(bytes.length);
+        content.setChecksum(crc.getValue());
+        content.setCodec(CODEC);
+    }
+
+    /**
+     * Decompresses a content row, checking its length and checksum.
+     *
+     * @param content The content row
+     * @return The script text
+     * @throws IllegalStateException if the stored data is corrupted
+     */
+    String decode(TeleprompterContent content) {
+        byte[] bytes = new byte[content.getUncompressedLength()];
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(content.getData()))) {
+            int read = in.readNBytes(bytes, 0, bytes.length);
+            if (read != bytes.length || in.read() != -1) {
+                throw new IllegalStateException("Content " + content.getId() + " does not match its stored length");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Content " + content.getId() + " could not be decompressed", e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != content.getChecksum()) {
+            throw new IllegalStateException("Content " + content.getId() + " does not match its checksum");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
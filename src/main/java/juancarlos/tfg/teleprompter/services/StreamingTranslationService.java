@@ -0,0 +1,172 @@
+package juancarlos.tfg.teleprompter.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Service class that streams translations to the client as Server-Sent Events.
+ * The text is translated chunk by chunk in order, and every fragment produced by the model
+ * is forwarded as a "delta" event as soon as it arrives, so the first words reach the client
+ * long before the translation is complete. The stream ends with a "done" or an "error" event.
+ * A client that goes away cancels the translation; that is not reported as an error.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class StreamingTranslationService {
+
+    private static final long EMITTER_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private final AiApiCallService aiApiCallService;
+    private final TranslationMemoryService translationMemoryService;
+    private final ChunkedTranslationService chunkedTranslationService;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("translation-stream-", 0).factory());
+
+    /**
+     * Constructs a new StreamingTranslationService.
+     *
+     * @param aiApiCallService The service used to stream each chunk from the AI provider
+     * @param translationMemoryService The service used to split the text into sentences
+     * @param chunkedTranslationService The service used to group sentences into chunks
+     */
+    public StreamingTranslationService(AiApiCallService aiApiCallService, TranslationMemoryService translationMemoryService,
+                                       ChunkedTranslationService chunkedTranslationService) {
+        this.aiApiCallService = aiApiCallService;
+        this.translationMemoryService = translationMemoryService;
+        this.chunkedTranslationService = chunkedTranslationService;
+    }
+
+    /**
+     * Starts streaming the translation of a text.
+     *
+     * @param text The text to translate
+     * @param targetLanguage The target language
+     * @param onFinished Callback run once the stream has ended, successfully or not
+     * @return The emitter the translation is streamed to
+     */
+    public SseEmitter stream(String text, String targetLanguage, Runnable onFinished) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        executor.execute(() -> {
+            try {
+                translate(emitter, text, targetLanguage);
+            } finally {
+                onFinished.run();
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Creates a stream that only carries an "error" event, for requests rejected before
+     * the translation starts.
+     *
+     * @param message The error message
+     * @return The completed emitter
+     */
+    public SseEmitter error(String message) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        try {
+            emitter.send(SseEmitter.event().name("error").data(Map.of("message", message)));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * Translates the text chunk by chunk and forwards every fragment to the emitter.
+     * Stops calling the AI provider as soon as the client goes away.
+     *
+     * @param emitter The emitter the translation is streamed to
+     * @param text The text to translate
+     * @param targetLanguage The target language
+     */
+    private void translate(SseEmitter emitter, String text, String targetLanguage) {
+        try {
+            List<List<String>> chunks = chunkedTranslationService.split(translationMemoryService.sentences(text));
+            for (List<String> chunk : chunks) {
+                String chunkText = String.join("", chunk);
+                String stripped = chunkText.strip();
+                int start = chunkText.indexOf(stripped);
+
+                send(emitter, "delta", chunkText.substring(0, start));
+                aiApiCallService.streamTranslation(stripped, targetLanguage, delta -> send(emitter, "delta", delta));
+                send(emitter, "delta", chunkText.substring(start + stripped.length()));
+            }
+            send(emitter, SseEmitter.event().name("done").data(Map.of("targetLanguage", targetLanguage)));
+            emitter.complete();
+        } catch (ClientDisconnectedException e) {
+            log.debug("Client closed the translation stream: {}", e.getMessage());
+            emitter.complete();
+        } catch (IOException | RuntimeException e) {
+            log.error("Streaming translation failed", e);
+            try {
+                emitter.send(SseEmitter.event().name("error").data(Map.of("message", "❌ Translation failed")));
+                emitter.complete();
+            } catch (IOException | IllegalStateException closed) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    /**
+     * Sends a text event to the client.
+     *
+     * @param emitter The emitter to send to
+     * @param name The name of the event
+     * @param data The text of the event, skipped when empty
+     * @throws ClientDisconnectedException if the client has gone away
+     */
+    private void send(SseEmitter emitter, String name, String data) {
+        if (!data.isEmpty()) {
+            send(emitter, SseEmitter.event().name(name).data(data));
+        }
+    }
+
+    /**
+     * Sends an event to the client.
+     * A failed write, or an emitter already completed by a timeout or a closed connection,
+     * means the client is gone.
+     *
+     * @param emitter The emitter to send to
+     * @param event The event to send
+     * @throws ClientDisconnectedException if the client has gone away
+     */
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            throw new ClientDisconnectedException(e);
+        }
+    }
+
+    /**
+     * Stops the streaming workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Thrown when the client of a stream has gone away.
+     * It is unchecked and not an {@link IOException}, so it passes through the HTTP client
+     * and the provider fallback unchanged and stops the upstream request.
+     */
+    private static final class ClientDisconnectedException extends RuntimeException {
+
+        private ClientDisconnectedException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -1,33 +1,55 @@
 package juancarlos.tfg.teleprompter.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import juancarlos.tfg.teleprompter.models.ContentPatch;
+import juancarlos.tfg.teleprompter.models.CurrentPrincipal;
+import juancarlos.tfg.teleprompter.models.PrompterPage;
 import juancarlos.tfg.teleprompter.models.Teleprompter;
-import juancarlos.tfg.teleprompter.models.User;
+import juancarlos.tfg.teleprompter.models.TeleprompterSummary;
 import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
 import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import juancarlos.tfg.teleprompter.services.extraction.DocumentExtractor;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 /**
  * Service class that handles teleprompter document operations.
  * Provides functionality for creating, updating, retrieving, and deleting teleprompter documents,
  * as well as file handling and content extraction.
+ * Owners are resolved through the principal cache, and documents are looked up by owner ID,
+ * so no user rows are read on these requests.
  *
  * @author Juan Carlos
  */
@@ -36,43 +58,46 @@ import java.util.Optional;
 @Slf4j
 public class TelePrompterService {
 
-    private static final String UPLOAD_DIR = "uploads";
+    private static final IntConsumer NO_PROGRESS = percent -> {
+    };
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final Set<String> SORT_PROPERTIES = Set.of("id", "name", "createdDate");
     private final PrompterRepository prompterRepository;
     private final UserRepository userRepository;
+    private final PrincipalCacheService principalCacheService;
+    private final DocumentExtractor documentExtractor;
+    private final BlobStoreService blobStoreService;
+    private final ObjectMapper objectMapper;
+    private final ScriptContentService scriptContentService;
+    private final FileReclamationService fileReclamationService;
 
     /**
      * Creates a new teleprompter document with optional file upload.
      * Extracts content from uploaded files and stores them in the system.
+     * The name lookup only avoids storing an upload for an obvious duplicate; concurrent
+     * creations with the same name are rejected by the unique constraint on (user_id, name).
      *
      * @param telePrompter The teleprompter object containing document details and optional file
      * @param userName The username of the user creating the teleprompter
      * @return true if the teleprompter was created successfully, false otherwise
      */
     public boolean create(Teleprompter telePrompter, String userName) {
-        Optional<User> user = userRepository.findByUsername(userName);
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
 
-        if (user.isEmpty() || prompterRepository.findByNameAndUserId(telePrompter.getName(), user.get().getId()).isPresent()) {
+        if (owner == null || prompterRepository.findByNameAndUserId(telePrompter.getName(), owner.getId()).isPresent()) {
             log.warn("User not found or teleprompter already exists");
             return false;
         }
 
+        String storedDigest = null;
+        boolean created = false;
         try {
             MultipartFile file = telePrompter.getFile();
             if (file != null && !file.isEmpty()) {
-                Path userUploadPath = Paths.get(UPLOAD_DIR, userName);
-                if (!Files.exists(userUploadPath)) {
-                    Files.createDirectories(userUploadPath);
-                }
-
-                String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-                Path filePath = userUploadPath.resolve(fileName);
-                Files.copy(file.getInputStream(), filePath);
-                log.info("File saved to: {}", filePath);
-
-                telePrompter.setFilePath(filePath.toString());
-                telePrompter.setFileName(file.getOriginalFilename());
+                storeUpload(telePrompter);
+                storedDigest = telePrompter.getBlobDigest();
 
-                String content = extractContentFromFile(filePath.toFile(), file.getContentType());
+                String content = extractContent(telePrompter, file.getContentType(), NO_PROGRESS);
                 if (content != null) {
                     log.info("Content extracted successfully, length: {}", content.length());
                     telePrompter.setContent(content);
@@ -82,99 +107,195 @@ public class TelePrompterService {
 
             }
 
+            if (telePrompter.getContent() != null) {
+                scriptContentService.write(telePrompter, telePrompter.getContent());
+            }
             telePrompter.setCreatedDate(LocalDate.now());
-            telePrompter.setUser(user.get());
+            telePrompter.setUser(userRepository.getReferenceById(owner.getId()));
 
             log.info("Saving teleprompter: {}", telePrompter);
-            Teleprompter saved = prompterRepository.save(telePrompter);
+            Teleprompter saved;
+            try {
+                saved = prompterRepository.save(telePrompter);
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Teleprompter {} already exists", telePrompter.getName());
+                return false;
+            }
+            created = true;
             log.info("Teleprompter saved with ID: {}", saved.getId());
             return true;
 
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             log.error("Error creating teleprompter", e);
             return false;
+        } finally {
+            if (!created && storedDigest != null) {
+                blobStoreService.release(storedDigest);
+            }
         }
     }
 
     /**
-     * Extracts text content from various file types (PDF, DOCX, TXT).
+     * Saves the uploaded file of a teleprompter document to the upload store.
+     * Sets the stored file path, digest and original file name on the teleprompter.
      *
-     * @param file The file to extract content from
+     * @param telePrompter The teleprompter object containing the uploaded file
+     * @return The path where the file was stored
+     * @throws IOException if an I/O error occurs while saving the file
+     */
+    Path storeUpload(Teleprompter telePrompter) throws IOException {
+        MultipartFile file = telePrompter.getFile();
+        String digest = blobStoreService.store(file);
+        Path filePath = blobStoreService.pathOf(digest);
+        log.info("File saved to: {}", filePath);
+
+        telePrompter.setBlobDigest(digest);
+        telePrompter.setFilePath(filePath.toString());
+        telePrompter.setFileName(file.getOriginalFilename());
+        return filePath;
+    }
+
+    /**
+     * Extracts the content of the stored file of a teleprompter document.
+     * Reuses the text cached for the same file content when there is one.
+     *
+     * @param telePrompter The teleprompter document whose file was stored
      * @param contentType The MIME type of the file
+     * @param progress Callback that receives the extraction progress as a percentage
      * @return The extracted text content, or null if extraction fails
-     * @throws IOException if an I/O error occurs during file reading
      */
-    private String extractContentFromFile(File file, String contentType) throws IOException {
-        log.info("Extracting content from file: {}, type: {}", file.getName(), contentType);
+    String extractContent(Teleprompter telePrompter, String contentType, IntConsumer progress) {
+        String digest = telePrompter.getBlobDigest();
+        String cached = blobStoreService.cachedText(digest);
+        if (cached != null) {
+            log.info("Reusing content extracted from blob {}", digest);
+            progress.accept(100);
+            return cached;
+        }
 
-        try {
-            if (contentType == null || contentType.equals("application/octet-stream")) {
-                String fileName = file.getName().toLowerCase();
-                if (fileName.endsWith(".pdf")) {
-                    contentType = "application/pdf";
-                } else if (fileName.endsWith(".txt")) {
-                    contentType = "text/plain";
-                } else if (fileName.endsWith(".docx")) {
-                    contentType = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
-                }
-                log.info("Detected content type from extension: {}", contentType);
-            }
+        String content = documentExtractor.extract(Paths.get(telePrompter.getFilePath()), contentType, telePrompter.getFileName(), progress);
+        if (content != null) {
+            blobStoreService.cacheText(digest, content);
+        }
+        return content;
+    }
 
-            if (contentType == null) {
-                log.warn("Content type is null and could not be detected from extension");
-                return null;
-            }
+    /**
+     * Releases the stored file of a teleprompter document.
+     * Files in the upload store are dereferenced, older files are deleted directly.
+     * Joins the caller's transaction; files are only deleted once it has committed.
+     *
+     * @param telePrompter The teleprompter document whose file is released
+     */
+    void releaseUpload(Teleprompter telePrompter) {
+        if (telePrompter.getBlobDigest() != null) {
+            blobStoreService.release(telePrompter.getBlobDigest());
+        } else {
+            fileReclamationService.reclaimAfterCommit(List.of(Paths.get(telePrompter.getFilePath())));
+        }
+    }
 
-            String content;
-            if (contentType.equals("text/plain")) {
-                content = new String(Files.readAllBytes(file.toPath()));
-            } else if (contentType.equals("application/pdf")) {
-                try (PDDocument document = PDDocument.load(Files.newInputStream(file.toPath()))) {
-                    PDFTextStripper stripper = new PDFTextStripper();
-                    content = stripper.getText(document);
-                }
-            } else if (contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-                try (XWPFDocument document = new XWPFDocument(Files.newInputStream(file.toPath()))) {
-                    XWPFWordExtractor extractor = new XWPFWordExtractor(document);
-                    content = extractor.getText();
-                }
-            } else {
-                log.warn("Unsupported content type: {}", contentType);
-                return null;
-            }
+    /**
+     * Removes a document whose upload could not be processed and releases its file.
+     * The file is only released if this call deleted the row, so a document deleted by its
+     * owner in the meantime does not release it twice.
+     *
+     * @param telePrompter The teleprompter document that was saved without content
+     */
+    @Transactional
+    public void discard(Teleprompter telePrompter) {
+        if (prompterRepository.deleteWithoutContent(telePrompter.getId()) == 1) {
+            releaseUpload(telePrompter);
+        }
+    }
 
-            content = content.replaceAll("\\r\\n|\\r|\\n", " ").replaceAll("\\s+", " ").trim();
+    /**
+     * Retrieves one page of the teleprompter documents of a specific user.
+     * Uses keyset pagination over a projection that never loads the document content.
+     * When a cursor is given, the sort order is taken from it.
+     *
+     * @param userName The username of the user
+     * @param size The requested page size, clamped between 1 and {@value #MAX_PAGE_SIZE}
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param sort The property to sort by: id, name or createdDate
+     * @param direction The sort direction: asc or desc
+     * @return The page of document summaries
+     * @throws IllegalArgumentException if the cursor, sort property or direction is not valid
+     */
+    public PrompterPage getPrompters(String userName, int size, String cursor, String sort, String direction) {
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
+        if (owner == null) {
+            return new PrompterPage(List.of(), null, 0);
+        }
 
-            log.info("Extracted content, length: {}", content.length());
-            return content;
-        } catch (Exception e) {
-            log.error("Error extracting content from file", e);
-            return null;
+        PageCursor position = cursor != null ? decodeCursor(cursor) : new PageCursor(sort, direction, null);
+        if (!SORT_PROPERTIES.contains(position.sort())) {
+            throw new IllegalArgumentException("Unsupported sort property: " + position.sort());
         }
+
+        ScrollPosition scrollPosition = position.keys() == null ? ScrollPosition.keyset() : ScrollPosition.forward(position.keys());
+        Sort order = Sort.by(Sort.Direction.fromString(position.direction()), position.sort());
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        Long userId = owner.getId();
+        Window<TeleprompterSummary> window = prompterRepository.findByUserId(userId, scrollPosition, order, Limit.of(limit));
+        String nextCursor = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            KeysetScrollPosition last = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            nextCursor = encodeCursor(new PageCursor(position.sort(), position.direction(), last.getKeys()));
+        }
+
+        return new PrompterPage(window.getContent(), nextCursor, prompterRepository.countByUserId(userId));
     }
 
     /**
-     * Retrieves all teleprompter documents for a specific user.
-     * Returns simplified versions of the documents without content.
+     * Encodes a page cursor as an opaque URL-safe string.
      *
-     * @param userName The username of the user
-     * @return A list of simplified teleprompter documents
+     * @param cursor The cursor to encode
+     * @return The encoded cursor
      */
-    public List<Teleprompter> getPrompters(String userName) {
-        Optional<User> user = userRepository.findByUsername(userName);
-        if (user.isEmpty()) {
-            return List.of();
+    private String encodeCursor(PageCursor cursor) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode page cursor", e);
         }
+    }
+
+    /**
+     * Decodes a page cursor, restoring the Java types of its keyset values.
+     *
+     * @param cursor The encoded cursor
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    private PageCursor decodeCursor(String cursor) {
+        try {
+            PageCursor decoded = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), PageCursor.class);
+            if (decoded.keys() == null) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
 
-        List<Teleprompter> prompters = prompterRepository.findByUser(user.get());
-        return prompters.stream().map(prompter -> {
-            Teleprompter simplified = new Teleprompter();
-            simplified.setId(prompter.getId());
-            simplified.setName(prompter.getName());
-            simplified.setDescription(prompter.getDescription());
-            simplified.setFileName(prompter.getFileName());
-            return simplified;
-        }).toList();
+            Map<String, Object> keys = new LinkedHashMap<>();
+            decoded.keys().forEach((property, value) -> keys.put(property, switch (property) {
+                case "id" -> ((Number) value).longValue();
+                case "createdDate" -> value == null ? null : LocalDate.parse((String) value);
+                default -> value;
+            }));
+            return new PageCursor(decoded.sort(), decoded.direction(), keys);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page cursor", e);
+        }
+    }
+
+    /**
+     * Content of a page cursor: the sort order and the keyset of the last returned document.
+     *
+     * @param sort The property the documents are sorted by
+     * @param direction The sort direction
+     * @param keys The keyset values of the last returned document, null for the first page
+     */
+    private record PageCursor(String sort, String direction, Map<String, Object> keys) {
     }
 
     /**
@@ -185,31 +306,66 @@ public class TelePrompterService {
      * @return The teleprompter document if found, null otherwise
      */
     public Teleprompter getPrompterById(Long id, String userName) {
-        Optional<User> user = userRepository.findByUsername(userName);
-        if (user.isEmpty()) {
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
+        if (owner == null) {
+            return null;
+        }
+
+        Optional<Teleprompter> telePrompter = prompterRepository.findByIdAndUserId(id, owner.getId());
+        return telePrompter.orElse(null);
+    }
+
+    /**
+     * Retrieves a specific teleprompter document by ID for a user, including its script text.
+     * Only this lookup loads and decompresses the content; listings and downloads never touch it.
+     * The content row is fetched in the same query, so no open session is needed to read it.
+     *
+     * @param id The ID of the teleprompter to retrieve
+     * @param userName The username of the user
+     * @return The teleprompter document with its content set if found, null otherwise
+     */
+    public Teleprompter getPrompterWithContent(Long id, String userName) {
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
+        if (owner == null) {
             return null;
         }
 
-        Optional<Teleprompter> telePrompter = prompterRepository.findByIdAndUser(id, user.get());
+        Optional<Teleprompter> telePrompter = prompterRepository.findWithBodyByIdAndUserId(id, owner.getId());
+        telePrompter.ifPresent(found -> found.setContent(scriptContentService.read(found)));
         return telePrompter.orElse(null);
     }
 
     /**
      * Downloads the file associated with a teleprompter document.
+     * The file is streamed from disk instead of being read into memory. The response carries
+     * an ETag and Last-Modified date, so Spring MVC answers conditional requests with 304 and
+     * Range requests with 206 partial content.
      *
      * @param telePrompter The teleprompter document containing the file information
-     * @return ResponseEntity containing the file data or an error message
+     * @return ResponseEntity containing the file resource or an error message
      */
     public ResponseEntity<?> downloadFile(Teleprompter telePrompter) {
-        File file = new File(telePrompter.getFilePath());
-        if (!file.exists()) {
+        Path filePath = Paths.get(telePrompter.getFilePath());
+        if (!Files.isRegularFile(filePath)) {
             return ResponseEntity.status(404).body(Map.of("message", "❌ File not found"));
         }
 
         try {
-            Path filePath = Paths.get(file.getAbsolutePath());
-            byte[] data = Files.readAllBytes(filePath);
-            return ResponseEntity.ok().header("Content-Disposition", "attachment; filename=\"" + telePrompter.getFileName() + "\"").body(data);
+            long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+            String eTag = telePrompter.getBlobDigest() != null
+                    ? "\"" + telePrompter.getBlobDigest() + "\""
+                    : "W/\"" + Long.toHexString(Files.size(filePath)) + "-" + Long.toHexString(lastModified) + "\"";
+            ContentDisposition disposition = ContentDisposition.attachment()
+                    .filename(telePrompter.getFileName(), StandardCharsets.UTF_8)
+                    .build();
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(MediaTypeFactory.getMediaType(telePrompter.getFileName()).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .body(new FileSystemResource(filePath));
         } catch (IOException e) {
             log.error("Error downloading file", e);
             return ResponseEntity.status(500).body(Map.of("message", "❌ Internal server error"));
@@ -218,27 +374,23 @@ public class TelePrompterService {
 
     /**
      * Deletes a teleprompter document and its associated file.
+     * The file reference is released in the same transaction as the row, and the file itself
+     * is deleted in the background once the transaction has committed.
      *
      * @param id The ID of the teleprompter to delete
      * @param user The username of the user
      * @return true if the deletion was successful, false otherwise
      */
+    @Transactional
     public boolean delete(Long id, String user) {
-        Optional<User> userOptional = userRepository.findByUsername(user);
-        if (userOptional.isEmpty()) {
+        CurrentPrincipal owner = principalCacheService.resolve(user);
+        if (owner == null) {
             return false;
         }
 
-        Optional<Teleprompter> telePrompter = prompterRepository.findByIdAndUser(id, userOptional.get());
+        Optional<Teleprompter> telePrompter = prompterRepository.findByIdAndUserId(id, owner.getId());
         if (telePrompter.isPresent()) {
-            try {
-                File file = new File(telePrompter.get().getFilePath());
-                if (file.exists()) {
-                    Files.delete(file.toPath());
-                }
-            } catch (IOException e) {
-                log.error("Error deleting file", e);
-            }
+            releaseUpload(telePrompter.get());
             prompterRepository.delete(telePrompter.get());
             return true;
         } else {
@@ -246,21 +398,63 @@ public class TelePrompterService {
         }
     }
 
+    /**
+     * Applies text operations to the script of a teleprompter document.
+     * Only the operations travel over the network; the document version is checked against
+     * the one the client edited. The new text is stored in a new content row, so the version is
+     * incremented once by the update of the document row, and concurrent patches against the
+     * same version fail with an optimistic locking conflict.
+     *
+     * @param id The ID of the teleprompter to patch
+     * @param patch The version the client edited and the operations to apply
+     * @param userName The username of the user
+     * @return The patched teleprompter, with its new version once committed, or null if not found
+     * @throws ObjectOptimisticLockingFailureException if the document was modified since the given version
+     * @throws IllegalArgumentException if the patch is incomplete or an operation is out of bounds
+     */
+    @Transactional
+    public Teleprompter patchContent(Long id, ContentPatch patch, String userName) {
+        if (patch.getVersion() == null || patch.getOperations() == null) {
+            throw new IllegalArgumentException("Version and operations are required");
+        }
+
+        CurrentPrincipal owner = principalCacheService.resolve(userName);
+        if (owner == null) {
+            return null;
+        }
+
+        Optional<Teleprompter> existing = prompterRepository.findWithBodyByIdAndUserId(id, owner.getId());
+        if (existing.isEmpty()) {
+            return null;
+        }
+
+        Teleprompter telePrompter = existing.get();
+        if (!patch.getVersion().equals(telePrompter.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Teleprompter.class, id);
+        }
+
+        String current = scriptContentService.read(telePrompter);
+        String content = scriptContentService.applyEdits(current != null ? current : "", patch.getOperations());
+        scriptContentService.write(telePrompter, content);
+        telePrompter.setUpdatedDate(LocalDate.now());
+        return telePrompter;
+    }
+
     /**
      * Updates an existing teleprompter document.
      *
      * @param id The ID of the teleprompter to update
      * @param telePrompter The teleprompter object containing updated information
      * @param user The username of the user
-     * @return true if the update was successful, false otherwise
+     * @return true if the update was successful, false if not found or the new name is already used
      */
     public boolean update(Long id, Teleprompter telePrompter, String user) {
-        Optional<User> userOptional = userRepository.findByUsername(user);
-        if (userOptional.isEmpty()) {
+        CurrentPrincipal owner = principalCacheService.resolve(user);
+        if (owner == null) {
             return false;
         }
 
-        Optional<Teleprompter> existingTelePrompter = prompterRepository.findByIdAndUser(id, userOptional.get());
+        Optional<Teleprompter> existingTelePrompter = prompterRepository.findByIdAndUserId(id, owner.getId());
         if (existingTelePrompter.isPresent()) {
             Teleprompter telePrompterToUpdate = existingTelePrompter.get();
 
@@ -280,11 +474,16 @@ public class TelePrompterService {
                 telePrompterToUpdate.setLanguage(telePrompter.getLanguage());
             }
             if (telePrompter.getContent() != null) {
-                telePrompterToUpdate.setContent(telePrompter.getContent());
+                scriptContentService.write(telePrompterToUpdate, telePrompter.getContent());
             }
 
             telePrompterToUpdate.setUpdatedDate(LocalDate.now());
-            prompterRepository.save(telePrompterToUpdate);
+            try {
+                prompterRepository.save(telePrompterToUpdate);
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Teleprompter {} already exists", telePrompterToUpdate.getName());
+                return false;
+            }
             return true;
         } else {
             return false;
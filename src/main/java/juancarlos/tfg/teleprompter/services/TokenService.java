@@ -0,0 +1,188 @@
+package juancarlos.tfg.teleprompter.services;
+
+import juancarlos.tfg.teleprompter.models.RefreshToken;
+import juancarlos.tfg.teleprompter.models.TokenPair;
+import juancarlos.tfg.teleprompter.models.User;
+import juancarlos.tfg.teleprompter.repositories.RefreshTokenRepository;
+import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that issues and rotates authentication tokens.
+ * Access tokens are short-lived signed JWTs carrying the username, id and role of the user,
+ * so requests are authenticated without touching the database. Refresh tokens are random,
+ * single-use values stored as hashes; each refresh consumes the token and issues a new pair,
+ * and reusing a consumed token revokes every token issued from the same login.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class TokenService {
+
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+    private static final String ISSUER = "teleprompter";
+    private static final String TOKEN_TYPE = "Bearer";
+    private static final int REFRESH_TOKEN_BYTES = 32;
+
+    private final JwtEncoder jwtEncoder;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final SecureRandom random = new SecureRandom();
+    private final Duration accessTokenTtl;
+    private final Duration refreshTokenTtl;
+    private final boolean stateless;
+
+    /**
+     * Constructs a new TokenService.
+     *
+     * @param jwtEncoder The encoder that signs access tokens
+     * @param refreshTokenRepository The repository of issued refresh tokens
+     * @param userRepository The repository used to reload the user on refresh
+     * @param accessTokenMinutes The lifetime of access tokens in minutes
+     * @param refreshTokenDays The lifetime of refresh tokens in days
+     * @param stateless Whether logins only issue tokens, without creating an HTTP session
+     */
+    public TokenService(JwtEncoder jwtEncoder, RefreshTokenRepository refreshTokenRepository, UserRepository userRepository,
+                        @Value("${teleprompter.auth.access-token-minutes:15}") long accessTokenMinutes,
+                        @Value("${teleprompter.auth.refresh-token-days:14}") long refreshTokenDays,
+                        @Value("${teleprompter.auth.stateless:false}") boolean stateless) {
+        this.jwtEncoder = jwtEncoder;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.accessTokenTtl = Duration.ofMinutes(accessTokenMinutes);
+        this.refreshTokenTtl = Duration.ofDays(refreshTokenDays);
+        this.stateless = stateless;
+    }
+
+    /**
+     * Checks whether the application runs in stateless mode, where logins do not create an HTTP session.
+     *
+     * @return true in stateless mode
+     */
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    /**
+     * Issues a new access and refresh token pair after a successful login.
+     *
+     * @param user The authenticated user
+     * @return The issued tokens
+     */
+    public TokenPair issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for a new token pair.
+     * The presented token is consumed. A token that was already consumed is treated as stolen
+     * and revokes its whole family, logging out both the thief and the legitimate client.
+     * Consuming the token, the checks and issuing the new pair run in one transaction, so a failure
+     * while issuing does not leave the client with a consumed token and no replacement.
+     *
+     * @param refreshToken The refresh token
+     * @return The new tokens, or null if the token is unknown, expired, consumed or its user is no longer valid
+     */
+    @Transactional
+    public TokenPair refresh(String refreshToken) {
+        RefreshToken stored = refreshTokenRepository.findByTokenHash(DigestUtils.sha256Hex(refreshToken)).orElse(null);
+        if (stored == null) {
+            return null;
+        }
+
+        Instant now = Instant.now();
+        if (refreshTokenRepository.markUsed(stored.getId(), now) == 0) {
+            log.warn("Refresh token reuse detected for user {}, revoking the token family", stored.getUserId());
+            refreshTokenRepository.revokeFamily(stored.getFamilyId(), now);
+            return null;
+        }
+        if (stored.getExpiresAt().isBefore(now)) {
+            return null;
+        }
+
+        User user = userRepository.findById(stored.getUserId()).orElse(null);
+        if (user == null || !user.isVerified()) {
+            refreshTokenRepository.revokeFamily(stored.getFamilyId(), now);
+            return null;
+        }
+        return issue(user, stored.getFamilyId());
+    }
+
+    /**
+     * Revokes a refresh token and every token issued from the same login.
+     *
+     * @param refreshToken The refresh token
+     * @return true if the token was known, false otherwise
+     */
+    public boolean revoke(String refreshToken) {
+        RefreshToken stored = refreshTokenRepository.findByTokenHash(DigestUtils.sha256Hex(refreshToken)).orElse(null);
+        if (stored == null) {
+            return false;
+        }
+        refreshTokenRepository.revokeFamily(stored.getFamilyId(), Instant.now());
+        return true;
+    }
+
+    /**
+     * Issues a token pair in an existing refresh token family.
+     *
+     * @param user The user
+     * @param familyId The refresh token family
+     * @return The issued tokens
+     */
+    private TokenPair issue(User user, String familyId) {
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer(ISSUER)
+                .subject(user.getUsername())
+                .issuedAt(now)
+                .expiresAt(now.plus(accessTokenTtl))
+                .claim(CLAIM_USER_ID, user.getId())
+                .claim(CLAIM_ROLE, user.getRole())
+                .build();
+        String accessToken = jwtEncoder.encode(JwtEncoderParameters.from(JwsHeader.with(MacAlgorithm.HS256).build(), claims)).getTokenValue();
+
+        byte[] value = new byte[REFRESH_TOKEN_BYTES];
+        random.nextBytes(value);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+
+        RefreshToken stored = new RefreshToken();
+        stored.setTokenHash(DigestUtils.sha256Hex(refreshToken));
+        stored.setFamilyId(familyId);
+        stored.setUserId(user.getId());
+        stored.setExpiresAt(now.plus(refreshTokenTtl));
+        refreshTokenRepository.save(stored);
+
+        return new TokenPair(accessToken, refreshToken, TOKEN_TYPE, accessTokenTtl.toSeconds());
+    }
+
+    /**
+     * Scheduled task that deletes expired refresh tokens from the database.
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.HOURS)
+    public void purgeExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired refresh tokens", deleted);
+        }
+    }
+}
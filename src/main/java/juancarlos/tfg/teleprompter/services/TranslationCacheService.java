@@ -0,0 +1,166 @@
+package juancarlos.tfg.teleprompter.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import juancarlos.tfg.teleprompter.models.TranslationMemoryEntry;
+import juancarlos.tfg.teleprompter.repositories.TranslationMemoryRepository;
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class that caches sentence translations.
+ * Keeps recent translations in an in-memory cache bounded by the total length of the cached texts,
+ * backed by the translation_memory table, so sentences translated before are answered without
+ * calling the AI provider. Stored translations expire after a configurable time.
+ * Hits and misses of both tiers are published as metrics.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class TranslationCacheService {
+
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    private final TranslationMemoryRepository memoryRepository;
+    private final Cache<String, TranslationMemoryEntry> memory;
+    private final Duration ttl;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    /**
+     * Constructs a new TranslationCacheService.
+     *
+     * @param memoryRepository The repository for the persistent cache tier
+     * @param meterRegistry The registry the cache metrics are published to
+     * @param maxChars The maximum total length of the translations kept in memory, in characters
+     * @param ttlDays The number of days a translation is reused
+     */
+    public TranslationCacheService(TranslationMemoryRepository memoryRepository, MeterRegistry meterRegistry,
+                                   @Value("${teleprompter.translation.cache.max-chars:10000000}") long maxChars,
+                                   @Value("${teleprompter.translation.cache.ttl-days:30}") long ttlDays) {
+        this.memoryRepository = memoryRepository;
+        this.ttl = Duration.ofDays(ttlDays);
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(maxChars)
+                .weigher((String key, TranslationMemoryEntry entry) -> key.length() + entry.getSourceText().length() + entry.getTargetText().length())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "translation");
+        this.memoryHits = meterRegistry.counter("teleprompter.translation.cache", "result", "memory-hit");
+        this.databaseHits = meterRegistry.counter("teleprompter.translation.cache", "result", "database-hit");
+        this.misses = meterRegistry.counter("teleprompter.translation.cache", "result", "miss");
+    }
+
+    /**
+     * Computes the cache key of a translation.
+     * The text is whitespace-normalized first, so formatting differences do not cause misses.
+     *
+     * @param text The source text
+     * @param targetLanguage The target language
+     * @param model The model used to translate
+     * @param promptVersion The version of the translation prompt
+     * @return The hex-encoded SHA-256 cache key
+     */
+    public String key(String text, String targetLanguage, String model, String promptVersion) {
+        WhitespaceNormalizingWriter normalized = new WhitespaceNormalizingWriter();
+        normalized.write(text);
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(normalized.toString().getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(String.join("\u0000", targetLanguage.trim().toLowerCase(Locale.ROOT), model, promptVersion)
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Looks up cached translations, first in memory and then in the database.
+     *
+     * @param keys The cache keys
+     * @return The unexpired cached translations by key; keys without one are left out
+     */
+    public Map<String, TranslationMemoryEntry> getAll(Collection<String> keys) {
+        Map<String, TranslationMemoryEntry> found = new HashMap<>(memory.getAllPresent(keys));
+        memoryHits.increment(found.size());
+
+        List<String> remaining = keys.stream().filter(key -> !found.containsKey(key)).distinct().toList();
+        Instant now = Instant.now();
+        int fromDatabase = 0;
+        for (int from = 0; from < remaining.size(); from += LOOKUP_BATCH_SIZE) {
+            List<String> batch = remaining.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, remaining.size()));
+            for (TranslationMemoryEntry entry : memoryRepository.findAllById(batch)) {
+                if (entry.getExpiresAt() != null && entry.getExpiresAt().isAfter(now)) {
+                    found.put(entry.getSegmentKey(), entry);
+                    memory.put(entry.getSegmentKey(), entry);
+                    fromDatabase++;
+                }
+            }
+        }
+        databaseHits.increment(fromDatabase);
+        misses.increment(remaining.size() - fromDatabase);
+        return found;
+    }
+
+    /**
+     * Stores new translations in both cache tiers.
+     * Each translation is inserted on its own, so a translation stored concurrently by another
+     * request is kept and does not fail the others.
+     *
+     * @param entries The translations to store, with their keys and texts set
+     */
+    public void putAll(Collection<TranslationMemoryEntry> entries) {
+        Instant now = Instant.now();
+        int failed = 0;
+        for (TranslationMemoryEntry entry : entries) {
+            entry.setCreatedAt(now);
+            entry.setExpiresAt(now.plus(ttl));
+            memory.put(entry.getSegmentKey(), entry);
+            try {
+                memoryRepository.insertIfAbsent(entry.getSegmentKey(), entry.getSourceText(), entry.getTargetText(),
+                        entry.getOriginalLanguage(), entry.getTargetLanguage(), entry.getCreatedAt(), entry.getExpiresAt());
+            } catch (RuntimeException e) {
+                failed++;
+                log.debug("Could not store translation {}", entry.getSegmentKey(), e);
+            }
+        }
+        if (failed > 0) {
+            log.warn("Could not store {} of {} translations in the translation memory", failed, entries.size());
+        }
+    }
+
+    /**
+     * Scheduled task that deletes expired translations from the database.
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.HOURS)
+    public void purgeExpired() {
+        int deleted = memoryRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired translations", deleted);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package juancarlos.tfg.teleprompter.services;
+
+import juancarlos.tfg.teleprompter.models.SegmentTranslation;
+import juancarlos.tfg.teleprompter.models.TranslationMemoryEntry;
+import juancarlos.tfg.teleprompter.models.TranslationResponse;
+import juancarlos.tfg.teleprompter.services.resilience.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service class that translates scripts through a sentence-level translation memory.
+ * Splits the text into sentences, reuses the stored translation of every sentence already seen,
+ * and only sends new or changed sentences to the AI provider, so re-translating an edited script
+ * costs in proportion to the edit. Whitespace between sentences is kept as in the source.
+ * A sentence missing from the memory that another request is already translating to the same
+ * language is not sent again; the request waits for that translation instead.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class TranslationMemoryService {
+
+    private static final int MAX_SENTENCE_LENGTH = 2000;
+
+    private final TranslationCacheService translationCacheService;
+    private final ChunkedTranslationService chunkedTranslationService;
+    private final AiApiCallService aiApiCallService;
+    private final SingleFlight<SentenceKey, TranslationMemoryEntry> sentenceTranslations = new SingleFlight<>();
+
+    /**
+     * Constructs a new TranslationMemoryService.
+     *
+     * @param translationCacheService The cache of stored sentence translations
+     * @param chunkedTranslationService The service used to translate new sentences
+     * @param aiApiCallService The service used to compute the sentence keys of every provider
+     * @param meterRegistry The registry the coalescing metrics are published to
+     */
+    public TranslationMemoryService(TranslationCacheService translationCacheService, ChunkedTranslationService chunkedTranslationService,
+                                    AiApiCallService aiApiCallService, MeterRegistry meterRegistry) {
+        this.translationCacheService = translationCacheService;
+        this.chunkedTranslationService = chunkedTranslationService;
+        this.aiApiCallService = aiApiCallService;
+        FunctionCounter.builder("teleprompter.translation.coalesced", sentenceTranslations, SingleFlight::getCoalesced)
+                .description("Sentences that joined the translation of the same sentence in flight")
+                .tag("path", "sentence")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Translates a text to the target language sentence by sentence, through the translation memory.
+     *
+     * @param text The text to translate
+     * @param targetLanguage The target language
+     * @param userName The username of the user the text belongs to
+     * @return A TranslationResponse containing the translated text or error information
+     */
+    public TranslationResponse translate(String text, String targetLanguage, String userName) {
+        List<Sentence> sentences = split(text);
+        if (sentences.isEmpty()) {
+            return TranslationResponse.success(text, null, targetLanguage);
+        }
+
+        Map<String, TranslationMemoryEntry> known = lookup(sentences, targetLanguage);
+        Set<String> missing = new LinkedHashSet<>();
+        for (Sentence sentence : sentences) {
+            if (!known.containsKey(sentence.text)) {
+                missing.add(sentence.text);
+            }
+        }
+        log.info("Translating {} sentences, {} found in translation memory", sentences.size(),
+                sentences.stream().filter(sentence -> known.containsKey(sentence.text)).count());
+
+        String originalLanguage = known.isEmpty() ? null : known.values().iterator().next().getOriginalLanguage();
+        if (!missing.isEmpty()) {
+            Map<SentenceKey, TranslationMemoryEntry> translations = sentenceTranslations.executeAll(
+                    missing.stream().map(source -> new SentenceKey(source, targetLanguage)).toList(),
+                    keys -> translateMissing(keys.stream().map(SentenceKey::text).toList(), targetLanguage, userName));
+            for (String source : missing) {
+                TranslationMemoryEntry entry = translations.get(new SentenceKey(source, targetLanguage));
+                if (entry == null) {
+                    return TranslationResponse.error("Translation failed", "Some sentences could not be translated");
+                }
+                known.put(source, entry);
+            }
+            originalLanguage = known.get(missing.iterator().next()).getOriginalLanguage();
+        }
+
+        StringBuilder translated = new StringBuilder(text.length());
+        for (Sentence sentence : sentences) {
+            translated.append(sentence.leading).append(known.get(sentence.text).getTargetText()).append(sentence.trailing);
+        }
+        return TranslationResponse.success(translated.toString(), originalLanguage, targetLanguage);
+    }
+
+    /**
+     * Translates sentences missing from the translation memory and stores the translations.
+     * The chunks that were translated are stored even if others failed, so a retry of the
+     * text only pays for the sentences that are still missing.
+     *
+     * @param sources The sentences to translate
+     * @param targetLanguage The target language
+     * @param userName The username of the user the sentences belong to
+     * @return The translations by sentence; sentences that could not be translated are left out
+     */
+    private Map<SentenceKey, TranslationMemoryEntry> translateMissing(List<String> sources, String targetLanguage, String userName) {
+        Map<SentenceKey, TranslationMemoryEntry> translated = new HashMap<>();
+        List<TranslationMemoryEntry> entries = new ArrayList<>(sources.size());
+        for (ChunkedTranslationService.Chunk chunk : chunkedTranslationService.translate(sources, targetLanguage, userName)) {
+            SegmentTranslation translation = chunk.translation();
+            if (translation == null) {
+                continue;
+            }
+            Iterator<String> targets = translation.getSegments().iterator();
+            for (String source : chunk.sentences()) {
+                TranslationMemoryEntry entry = new TranslationMemoryEntry();
+                entry.setSourceText(source);
+                entry.setTargetText(targets.next());
+                entry.setOriginalLanguage(translation.getOriginalLanguage());
+                entry.setTargetLanguage(targetLanguage);
+                translated.put(new SentenceKey(source, targetLanguage), entry);
+                if (translation.getCacheScope() != null) {
+                    entry.setSegmentKey(aiApiCallService.segmentKey(source, targetLanguage, translation.getCacheScope()));
+                    entries.add(entry);
+                }
+            }
+        }
+        translationCacheService.putAll(entries);
+        return translated;
+    }
+
+    /**
+     * Looks up the stored translations of the sentences of a text.
+     * A sentence may have been translated by any of the enabled providers, so its key under
+     * every provider and model is looked up, and the best provider's translation is used.
+     *
+     * @param sentences The sentences
+     * @param targetLanguage The target language
+     * @return The stored translations by sentence text; sentences without one are left out
+     */
+    private Map<String, TranslationMemoryEntry> lookup(List<Sentence> sentences, String targetLanguage) {
+        List<String> scopes = aiApiCallService.cacheScopes();
+        Map<String, List<String>> keysByText = new LinkedHashMap<>();
+        for (Sentence sentence : sentences) {
+            keysByText.computeIfAbsent(sentence.text, source -> scopes.stream()
+                    .map(scope -> aiApiCallService.segmentKey(source, targetLanguage, scope))
+                    .toList());
+        }
+
+        Map<String, TranslationMemoryEntry> stored = translationCacheService.getAll(
+                keysByText.values().stream().flatMap(List::stream).toList());
+        Map<String, TranslationMemoryEntry> known = new HashMap<>();
+        keysByText.forEach((source, keys) -> keys.stream()
+                .filter(stored::containsKey)
+                .findFirst()
+                .ifPresent(key -> known.put(source, stored.get(key))));
+        return known;
+    }
+
+    /**
+     * Splits a text into sentences, keeping the whitespace around each one.
+     * Sentences longer than {@value #MAX_SENTENCE_LENGTH} characters are split between words.
+     *
+     * @param text The text to split
+     * @return The non-blank sentences in order
+     */
+    List<Sentence> split(String text) {
+        List<Sentence> sentences = new ArrayList<>();
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ROOT);
+        iterator.setText(text);
+
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            while (end - start > MAX_SENTENCE_LENGTH) {
+                int cut = text.lastIndexOf(' ', start + MAX_SENTENCE_LENGTH);
+                cut = cut > start ? cut + 1 : start + MAX_SENTENCE_LENGTH;
+                addSentence(sentences, text, start, cut);
+                start = cut;
+            }
+            addSentence(sentences, text, start, end);
+        }
+        return sentences;
+    }
+
+    /**
+     * Splits a text into sentences that include the whitespace around them,
+     * so concatenating them gives back the original text.
+     *
+     * @param text The text to split
+     * @return The sentences in order
+     */
+    List<String> sentences(String text) {
+        List<String> pieces = new ArrayList<>();
+        for (Sentence sentence : split(text)) {
+            pieces.add(sentence.leading + sentence.text + sentence.trailing);
+        }
+        return pieces;
+    }
+
+    /**
+     * Adds the sentence between two offsets, or merges blank text into the previous sentence.
+     * Blank text before the first sentence becomes part of its leading whitespace.
+     *
+     * @param sentences The sentences found so far
+     * @param text The full text
+     * @param start The start of the sentence
+     * @param end The end of the sentence
+     */
+    private void addSentence(List<Sentence> sentences, String text, int start, int end) {
+        int from = start;
+        int to = end;
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+
+        if (from == to) {
+            if (!sentences.isEmpty()) {
+                Sentence last = sentences.get(sentences.size() - 1);
+                last.trailing = last.trailing + text.substring(start, end);
+            }
+            return;
+        }
+        Sentence sentence = new Sentence(text.substring(from, to));
+        sentence.leading = text.substring(sentences.isEmpty() ? 0 : start, from);
+        sentence.trailing = text.substring(to, end);
+        sentences.add(sentence);
+    }
+
+    /**
+     * Identifies the translation of a sentence for coalescing.
+     *
+     * @param text The sentence
+     * @param targetLanguage The target language
+     */
+    private record SentenceKey(String text, String targetLanguage) {
+    }
+
+    /**
+     * A sentence of the source text with the whitespace around it.
+     */
+    static class Sentence {
+        private final String text;
+        private String leading = "";
+        private String trailing = "";
+
+        /**
+         * Creates a new sentence.
+         *
+         * @param text The sentence without surrounding whitespace
+         */
+        Sentence(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -1,40 +1,253 @@
 package juancarlos.tfg.teleprompter.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
+import juancarlos.tfg.teleprompter.repositories.RefreshTokenRepository;
 import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Service class that handles cleanup operations for user accounts.
- * Provides scheduled tasks for removing unverified users.
+ * Provides scheduled tasks for removing unverified users, the upload directories left behind
+ * by deleted users, and stored files no document references anymore. Upload directories that documents still point to are kept, even when no user
+ * has their name any more, because renamed users keep their old upload directory. Users are removed with set-based deletes in small batches, with a pause
+ * between batches so the job does not hold locks on the users table for long. The job takes a
+ * lease in the scheduler_lock table first, so only one node runs it.
  *
  * @author Juan Carlos
  */
 @Service
+@Slf4j
 public class UserCleanupService {
 
+    private static final String LOCK_NAME = "user-cleanup";
+    private static final String UPLOAD_DIR = "uploads";
+    private static final Duration ORPHAN_GRACE = Duration.ofHours(1);
+
     private final UserRepository userRepository;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final PrompterRepository prompterRepository;
+    private final PrincipalCacheService principalCacheService;
+    private final BlobStoreService blobStoreService;
+    private final SchedulerLockService schedulerLockService;
+    private final FileReclamationService fileReclamationService;
+    private final Counter deletedUsers;
+    private final Counter deletedDirectories;
+    private final Counter deletedBlobs;
+    private final Timer runs;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final int maxDirectories;
+    private final int maxFiles;
+    private final Duration leaseTime;
 
     /**
-     * Constructs a new UserCleanupService with the specified UserRepository.
+     * Constructs a new UserCleanupService.
      *
      * @param userRepository The repository for user operations
+     * @param refreshTokenRepository The repository the refresh tokens of deleted users are removed from
+     * @param prompterRepository The repository used to find upload directories that documents still point to
+     * @param principalCacheService The cache the deleted users are removed from
+     * @param blobStoreService The store whose unreferenced files are deleted
+     * @param schedulerLockService The service that makes sure a single node runs the job
+     * @param fileReclamationService The worker that deletes the orphaned upload directories
+     * @param meterRegistry The registry the cleanup metrics are published to
+     * @param batchSize The maximum number of users deleted per statement
+     * @param batchPauseMs The pause between batches in milliseconds
+     * @param maxDirectories The maximum number of upload directories checked per run
+     * @param maxFiles The maximum number of stored files checked per run
+     * @param leaseMinutes The maximum time a run may take before another node can start one, in minutes
      */
-    public UserCleanupService(UserRepository userRepository) {
+    public UserCleanupService(UserRepository userRepository, RefreshTokenRepository refreshTokenRepository,
+                              PrompterRepository prompterRepository,
+                              PrincipalCacheService principalCacheService, BlobStoreService blobStoreService,
+                              SchedulerLockService schedulerLockService, FileReclamationService fileReclamationService,
+                              MeterRegistry meterRegistry,
+                              @Value("${teleprompter.cleanup.batch-size:500}") int batchSize,
+                              @Value("${teleprompter.cleanup.batch-pause-ms:200}") long batchPauseMs,
+                              @Value("${teleprompter.cleanup.max-directories:10000}") int maxDirectories,
+                              @Value("${teleprompter.cleanup.max-files:10000}") int maxFiles,
+                              @Value("${teleprompter.cleanup.lease-minutes:30}") long leaseMinutes) {
         this.userRepository = userRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.prompterRepository = prompterRepository;
+        this.principalCacheService = principalCacheService;
+        this.blobStoreService = blobStoreService;
+        this.schedulerLockService = schedulerLockService;
+        this.fileReclamationService = fileReclamationService;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.maxDirectories = maxDirectories;
+        this.maxFiles = maxFiles;
+        this.leaseTime = Duration.ofMinutes(leaseMinutes);
+        this.deletedUsers = meterRegistry.counter("teleprompter.cleanup.deleted", "type", "user");
+        this.deletedDirectories = meterRegistry.counter("teleprompter.cleanup.deleted", "type", "directory");
+        this.deletedBlobs = meterRegistry.counter("teleprompter.cleanup.deleted", "type", "blob");
+        this.runs = meterRegistry.timer("teleprompter.cleanup.runs");
     }
 
     /**
      * Scheduled task that runs daily at midnight to delete unverified users
-     * whose verification tokens have expired.
-     *
+     * whose verification tokens have expired, the upload directories of users that no longer exist,
+     * and the stored files without a stored_blob row.
+     * Users that still own teleprompter documents are kept.
      */
     @Scheduled(cron = "0 0 0 * * ?")
     public void deleteUnverifiedUsers() {
-        userRepository.findAll().stream().filter(user ->
-                !user.isVerified() && user.getTokenExpiryDate() != null &&
-                        user.getTokenExpiryDate().isBefore(LocalDate.now())).forEach(userRepository::delete);
+        if (!schedulerLockService.tryLock(LOCK_NAME, leaseTime)) {
+            return;
+        }
+        try {
+            runs.record(() -> {
+                Instant deadline = Instant.now().plus(leaseTime);
+                int users = purgeUnverifiedUsers(deadline);
+                int directories = purgeOrphanedUploads(deadline);
+                int blobs = Instant.now().isBefore(deadline)
+                        ? blobStoreService.reclaimOrphans(Instant.now().minus(ORPHAN_GRACE), maxFiles, deadline)
+                        : 0;
+                deletedBlobs.increment(blobs);
+                log.info("User cleanup finished: {} unverified users deleted, {} upload directories and {} stored files queued for deletion",
+                        users, directories, blobs);
+            });
+        } finally {
+            schedulerLockService.unlock(LOCK_NAME);
+        }
+    }
+
+    /**
+     * Deletes expired unverified users in batches until none are left.
+     * Stops early when the lease is about to expire or the thread is interrupted.
+     *
+     * @param deadline The time the lease of this run expires
+     * @return The number of deleted users
+     */
+    private int purgeUnverifiedUsers(Instant deadline) {
+        LocalDate cutoff = LocalDate.now();
+        int total = 0;
+        int batch = 0;
+        int deleted;
+        do {
+            deleted = userRepository.deleteExpiredUnverified(cutoff, batchSize);
+            total += deleted;
+            deletedUsers.increment(deleted);
+            log.info("User cleanup batch {}: {} users deleted, {} in total", ++batch, deleted, total);
+        } while (deleted == batchSize && Instant.now().isBefore(deadline) && pause());
+
+        if (total > 0) {
+            int tokens = refreshTokenRepository.deleteOrphaned();
+            log.info("Deleted {} refresh tokens of deleted users", tokens);
+            principalCacheService.invalidateAll();
+        }
+        return total;
+    }
+
+    /**
+     * Queues the upload directories whose user no longer exists for deletion.
+     * Usernames are checked against the database in batches, and directories modified
+     * recently are left alone in case their user is being created or renamed. At most a
+     * configured number of directories is checked per run, and the sweep stops when the
+     * lease is about to expire; the remaining directories are checked on the next run.
+     *
+     * @param deadline The time the lease of this run expires
+     * @return The number of queued directories
+     */
+    private int purgeOrphanedUploads(Instant deadline) {
+        Path uploads = Paths.get(UPLOAD_DIR);
+        if (!Files.isDirectory(uploads) || !Instant.now().isBefore(deadline)) {
+            return 0;
+        }
+
+        Instant threshold = Instant.now().minus(ORPHAN_GRACE);
+        int total = 0;
+        int checked = 0;
+        List<Path> candidates = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(uploads, Files::isDirectory)) {
+            for (Path directory : directories) {
+                if (checked++ == maxDirectories || Thread.currentThread().isInterrupted()) {
+                    log.info("Upload directory sweep stopped after {} directories", checked - 1);
+                    break;
+                }
+                candidates.add(directory);
+                if (candidates.size() == batchSize) {
+                    total += queueOrphans(candidates, threshold);
+                    candidates.clear();
+                    if (!Instant.now().isBefore(deadline)) {
+                        log.info("Upload directory sweep stopped at the lease deadline after {} directories", checked);
+                        return total;
+                    }
+                }
+            }
+            total += queueOrphans(candidates, threshold);
+        } catch (IOException e) {
+            log.error("Error listing upload directories", e);
+        }
+        return total;
+    }
+
+    /**
+     * Queues the directories of a batch whose user no longer exists for deletion.
+     * Directories that documents still point to are kept.
+     *
+     * @param directories The upload directories, named after their users
+     * @param threshold The time before which a directory must have been last modified to be deleted
+     * @return The number of queued directories
+     */
+    private int queueOrphans(List<Path> directories, Instant threshold) {
+        if (directories.isEmpty()) {
+            return 0;
+        }
+
+        List<String> names = directories.stream().map(directory -> directory.getFileName().toString()).toList();
+        Set<String> existing = new HashSet<>(userRepository.findExistingUsernames(names));
+        List<Path> orphans = new ArrayList<>();
+        for (Path directory : directories) {
+            if (existing.contains(directory.getFileName().toString())) {
+                continue;
+            }
+            try {
+                if (Files.getLastModifiedTime(directory).toInstant().isBefore(threshold)
+                        && !prompterRepository.referencesDirectory(directory)) {
+                    orphans.add(directory);
+                }
+            } catch (IOException e) {
+                log.warn("Could not check orphaned upload directory {}", directory, e);
+            }
+        }
+        fileReclamationService.reclaim(orphans);
+        deletedDirectories.increment(orphans.size());
+        return orphans.size();
+    }
+
+    /**
+     * Waits between two batches.
+     *
+     * @return true if the wait completed, false if the thread was interrupted
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package juancarlos.tfg.teleprompter.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service class that limits how many translations each user can run at the same time,
+ * so a single user cannot take all the capacity of the AI provider.
+ *
+ * @author Juan Carlos
+ */
+@Service
+public class UserQuotaService {
+
+    private final int maxConcurrent;
+    private final Map<String, Integer> running = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new UserQuotaService.
+     *
+     * @param maxConcurrent The maximum number of translations a user can run at the same time
+     */
+    public UserQuotaService(@Value("${teleprompter.ai.user.max-concurrent:2}") int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Takes a translation slot for a user.
+     *
+     * @param userName The username of the user
+     * @return true if the user had a free slot, false if the quota is exhausted
+     */
+    public boolean tryAcquire(String userName) {
+        boolean[] acquired = new boolean[1];
+        running.compute(userName, (user, count) -> {
+            int current = count == null ? 0 : count;
+            acquired[0] = current < maxConcurrent;
+            return acquired[0] ? current + 1 : count;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Gives back a translation slot taken by a user.
+     *
+     * @param userName The username of the user
+     */
+    public void release(String userName) {
+        running.computeIfPresent(userName, (user, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -1,17 +1,21 @@
 package juancarlos.tfg.teleprompter.services;
 
-import juancarlos.tfg.teleprompter.utils.Utils;
 import juancarlos.tfg.teleprompter.models.User;
-import juancarlos.tfg.teleprompter.models.Teleprompter;
+import juancarlos.tfg.teleprompter.repositories.RefreshTokenRepository;
+import juancarlos.tfg.teleprompter.repositories.TeleprompterContentRepository;
 import juancarlos.tfg.teleprompter.repositories.UserRepository;
 import juancarlos.tfg.teleprompter.repositories.PrompterRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
@@ -27,24 +31,28 @@ import java.util.Random;
 @Slf4j
 public class UserService {
 
+    private static final String UPLOAD_DIR = "uploads";
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final MailService mailService;
-    private final Utils utils;
     private final PrompterRepository prompterRepository;
+    private final BlobStoreService blobStoreService;
+    private final PrincipalCacheService principalCacheService;
+    private final TeleprompterContentRepository contentRepository;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final FileReclamationService fileReclamationService;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * Creates a new user in the system.
      * Sends a verification email to the user's email address.
+     * Duplicate usernames and emails are rejected by the unique constraints of the users table.
      *
      * @param user The user object containing user details
-     * @return true if the user was created successfully, false otherwise
+     * @return true if the user was created successfully, false if the username or email already exists
      */
     public boolean createUser(User user) {
-        if (utils.userExists(user)) {
-            return false;
-        }
-
         User newUser = new User();
         newUser.setUsername(user.getUsername());
         newUser.setEmail(user.getEmail());
@@ -54,10 +62,14 @@ public class UserService {
         newUser.setTokenExpiryDate(LocalDate.now().minusDays(1));
         newUser.setVerified(false);
         String token = String.format("%06d", new Random().nextInt(1000000));
-        mailService.sendVerificationEmail(newUser.getEmail(), token);
         newUser.setToken(token);
         user.setToken(token);
-        userRepository.save(newUser);
+        try {
+            userRepository.save(newUser);
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+        mailService.sendVerificationEmail(newUser.getEmail(), token);
         return true;
     }
 
@@ -83,6 +95,7 @@ public class UserService {
             user.get().setToken(null);
             user.get().setTokenExpiryDate(null);
             userRepository.save(user.get());
+            principalCacheService.invalidate(user.get().getUsername());
             return "Account activated successfully";
         }
 
@@ -103,11 +116,17 @@ public class UserService {
         user.setUpdatedDate(LocalDate.now());
         user.setTokenExpiryDate(LocalDate.now().plusDays(1));
         userRepository.save(user);
+        principalCacheService.invalidate(user.getUsername());
     }
 
     /**
      * Deletes a user and all associated data from the system.
-     * This includes user files, teleprompter documents, and the user record.
+     * The user record, teleprompter documents and their stored contents, refresh tokens
+     * and references to shared uploads are removed with bulk statements in a single transaction.
+     * The user's documents are locked before their files are read, so a concurrent upload cannot
+     * swap a file in between and leave its reference behind.
+     * Once it commits, the user directory, unless documents of a renamed user still point into it,
+     * and the files no document references anymore are handed over to the background reclamation worker, so the caller does not wait for the disk.
      *
      * @param id The ID of the user to delete
      */
@@ -119,61 +138,34 @@ public class UserService {
 
         log.info("Starting deletion process for user: {}", user.getUsername());
 
-        try {
-            File userDir = new File("uploads/" + user.getUsername());
-            if (userDir.exists()) {
-                log.info("Deleting user directory and all contents: {}", userDir.getAbsolutePath());
-                deleteDirectory(userDir);
-                if (userDir.exists()) {
-                    log.warn("User directory still exists after deletion attempt: {}", userDir.getAbsolutePath());
-                } else {
-                    log.info("User directory successfully deleted: {}", userDir.getAbsolutePath());
-                }
-            } else {
-                log.info("User directory does not exist: {}", userDir.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            log.error("Error deleting user directory for user: " + user.getUsername(), e);
-        }
-
-        List<Teleprompter> userPrompters = prompterRepository.findByUser(user);
-        log.info("Found {} teleprompters to delete for user: {}", userPrompters.size(), user.getUsername());
-        if (!userPrompters.isEmpty()) {
-            prompterRepository.deleteAll(userPrompters);
-            log.info("Successfully deleted all teleprompters for user: {}", user.getUsername());
-        }
-        
-        log.info("Deleting user record for: {}", user.getUsername());
-        userRepository.deleteById(id);
-        log.info("User deletion completed successfully for: {}", user.getUsername());
-    }
-
-    /**
-     * Recursively deletes a directory and all its contents.
-     *
-     * @param directory The directory to delete
-     */
-    private void deleteDirectory(File directory) {
-        if (!directory.exists()) {
-            return;
-        }
+        List<Path> files = new ArrayList<>();
+        List<String> blobs = transactionTemplate.execute(status -> {
+            prompterRepository.lockByUserId(id);
+            List<String> unreferenced = blobStoreService.releaseAll(prompterRepository.findBlobDigestsByUserId(id));
+            prompterRepository.findLegacyFilePathsByUserId(id).forEach(filePath -> files.add(Paths.get(filePath)));
+            List<Long> contentIds = prompterRepository.findContentIdsByUserId(id);
 
-        File[] allContents = directory.listFiles();
-        if (allContents != null) {
-            for (File file : allContents) {
-                if (file.isDirectory()) {
-                    deleteDirectory(file);
-                } else {
-                    if (!file.delete()) {
-                        log.warn("Failed to delete file: {}", file.getAbsolutePath());
-                    }
-                }
+            int prompters = prompterRepository.deleteByUserId(id);
+            if (!contentIds.isEmpty()) {
+                contentRepository.deleteByIds(contentIds);
             }
+            refreshTokenRepository.deleteByUserId(id);
+            userRepository.delete(user);
+            log.info("Deleted {} teleprompters for user: {}", prompters, user.getUsername());
+            return unreferenced;
+        });
+        principalCacheService.invalidate(user.getUsername());
+
+        Path uploads = Paths.get(UPLOAD_DIR, user.getUsername());
+        if (prompterRepository.referencesDirectory(uploads)) {
+            log.info("Keeping {}, documents of a renamed user still point to it", uploads);
+        } else {
+            files.add(uploads);
         }
-        
-        if (!directory.delete()) {
-            log.warn("Failed to delete directory: {}", directory.getAbsolutePath());
-        }
+        blobStoreService.reclaim(blobs);
+        fileReclamationService.reclaim(files);
+        log.info("User deletion completed successfully for: {}, {} stored files and {} paths queued for deletion",
+                user.getUsername(), blobs.size(), files.size());
     }
 
     /**
@@ -183,8 +175,7 @@ public class UserService {
      * @return The user object if found, null otherwise
      */
     public User loadUserByUsername(String username) {
-        List<User> users = userRepository.findAllByUsername(username);
-        return users.isEmpty() ? null : users.get(0);
+        return userRepository.findByUsername(username).orElse(null);
     }
 
     /**
@@ -195,9 +186,9 @@ public class UserService {
      * @return true if the username is taken, false otherwise
      */
     public boolean isUsernameTaken(String username, Long currentUserId) {
-        List<User> users = userRepository.findAllByUsername(username);
-        return users.stream()
-                .anyMatch(user -> !user.getId().equals(currentUserId));
+        return userRepository.findByUsername(username)
+                .filter(user -> !user.getId().equals(currentUserId))
+                .isPresent();
     }
 
     /**
@@ -208,9 +199,9 @@ public class UserService {
      * @return true if the email is taken, false otherwise
      */
     public boolean isEmailTaken(String email, Long currentUserId) {
-        List<User> users = userRepository.findAllByEmail(email);
-        return users.stream()
-                .anyMatch(user -> !user.getId().equals(currentUserId));
+        return userRepository.findByEmail(email)
+                .filter(user -> !user.getId().equals(currentUserId))
+                .isPresent();
     }
 
     /**
@@ -269,6 +260,7 @@ public class UserService {
         user.get().setToken(null);
         user.get().setVerified(true);
         userRepository.save(user.get());
+        principalCacheService.invalidate(user.get().getUsername());
         return "Password reset successful";
     }
 
@@ -298,12 +290,18 @@ public class UserService {
      * Updates the current user's profile information.
      *
      * @param user The user object containing updated information
-     * @return true if the update was successful, false otherwise
+     * @return true if the update was successful, false if the user was not found or the new username or email is taken
      */
     public boolean updateUser(User user) {
         return userRepository.findById(user.getId()).map(existingUser -> {
+            String previousUsername = existingUser.getUsername();
             updateUserFields(existingUser, user);
-            userRepository.save(existingUser);
+            try {
+                userRepository.save(existingUser);
+            } catch (DataIntegrityViolationException e) {
+                return false;
+            }
+            principalCacheService.invalidate(previousUsername);
             return true;
         }).orElse(false);
     }
@@ -313,12 +311,18 @@ public class UserService {
      *
      * @param id The ID of the user to update
      * @param user The user object containing updated information
-     * @return true if the update was successful, false otherwise
+     * @return true if the update was successful, false if the user was not found or the new username or email is taken
      */
     public boolean updateUserById(Long id, User user) {
         return userRepository.findById(id).map(existingUser -> {
+            String previousUsername = existingUser.getUsername();
             updateUserFields(existingUser, user);
-            userRepository.save(existingUser);
+            try {
+                userRepository.save(existingUser);
+            } catch (DataIntegrityViolationException e) {
+                return false;
+            }
+            principalCacheService.invalidate(previousUsername);
             return true;
         }).orElse(false);
     }
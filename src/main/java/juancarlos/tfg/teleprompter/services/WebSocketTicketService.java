@@ -0,0 +1,81 @@
+package juancarlos.tfg.teleprompter.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Service class that issues one-time tickets for opening live prompter WebSocket connections.
+ * Browsers cannot set headers on WebSocket handshakes, so instead of putting a reusable access
+ * token in the URL, an authenticated client asks for a ticket and passes it in the ticket query
+ * parameter. A ticket is valid for a few seconds and only once. Tickets are kept in memory as
+ * hashes, like the live channels themselves, so the handshake must reach the node that issued it.
+ *
+ * @author Juan Carlos
+ */
+@Service
+public class WebSocketTicketService {
+
+    private static final int TICKET_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Cache<String, String> tickets;
+    private final Duration ttl;
+
+    /**
+     * Constructs a new WebSocketTicketService.
+     *
+     * @param ttlSeconds How long a ticket stays valid, in seconds
+     * @param maxEntries The maximum number of outstanding tickets
+     */
+    public WebSocketTicketService(@Value("${teleprompter.websocket.ticket-seconds:30}") long ttlSeconds,
+                                  @Value("${teleprompter.websocket.max-tickets:100000}") long maxEntries) {
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.tickets = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Issues a ticket for a user.
+     *
+     * @param username The username of the authenticated user
+     * @return The ticket
+     */
+    public String issue(String username) {
+        byte[] value = new byte[TICKET_BYTES];
+        random.nextBytes(value);
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+        tickets.put(DigestUtils.sha256Hex(ticket), username);
+        return ticket;
+    }
+
+    /**
+     * Redeems a ticket, so it cannot be used again.
+     *
+     * @param ticket The ticket
+     * @return The username the ticket was issued to, or null if it is unknown, expired or already used
+     */
+    public String redeem(String ticket) {
+        if (ticket == null || ticket.isBlank()) {
+            return null;
+        }
+        return tickets.asMap().remove(DigestUtils.sha256Hex(ticket));
+    }
+
+    /**
+     * Returns how long a ticket stays valid.
+     *
+     * @return The ticket lifetime
+     */
+    public Duration getTtl() {
+        return ttl;
+    }
+}
@@ -0,0 +1,114 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+/**
+ * Service class that extracts normalized text from uploaded documents.
+ * Delegates to the {@link DocumentFormat} resolved by the {@link DocumentFormatRegistry}
+ * and records per-format timing and failure metrics.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class DocumentExtractor {
+
+    private static final IntConsumer NO_PROGRESS = percent -> {
+    };
+
+    private final DocumentFormatRegistry registry;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructs a new DocumentExtractor.
+     *
+     * @param registry The registry used to resolve document formats
+     * @param meterRegistry The registry where extraction metrics are published
+     */
+    public DocumentExtractor(DocumentFormatRegistry registry, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Extracts the text content of a file.
+     *
+     * @param file The file to extract content from
+     * @param contentType The MIME type declared for the file, may be null
+     * @param fileName The original name of the file, may be null
+     * @return The extracted text content, or null if the format is unsupported or extraction fails
+     */
+    public String extract(Path file, String contentType, String fileName) {
+        return extract(file, contentType, fileName, NO_PROGRESS);
+    }
+
+    /**
+     * Extracts the text content of a file, reporting progress as it goes.
+     *
+     * @param file The file to extract content from
+     * @param contentType The MIME type declared for the file, may be null
+     * @param fileName The original name of the file, may be null
+     * @param progress Callback that receives the extraction progress as a percentage
+     * @return The extracted text content, or null if the format is unsupported or extraction fails
+     */
+    public String extract(Path file, String contentType, String fileName, IntConsumer progress) {
+        log.info("Extracting content from file: {}, type: {}", fileName, contentType);
+
+        DocumentFormat format;
+        try {
+            Optional<DocumentFormat> resolved = registry.resolve(file, contentType, fileName);
+            if (resolved.isEmpty()) {
+                log.warn("Unsupported content type: {}", contentType);
+                return null;
+            }
+            format = resolved.get();
+        } catch (Exception e) {
+            log.error("Error reading file header", e);
+            return null;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            WhitespaceNormalizingWriter writer = new WhitespaceNormalizingWriter();
+            format.extract(file, writer, progress);
+            progress.accept(100);
+
+            String content = writer.toString();
+            sample.stop(timer(format, "success"));
+            log.info("Extracted {} content, length: {}", format.getName(), content.length());
+            return content;
+        } catch (Exception e) {
+            sample.stop(timer(format, "failure"));
+            Counter.builder("teleprompter.extraction.failures")
+                    .tag("format", format.getName())
+                    .register(meterRegistry)
+                    .increment();
+            log.error("Error extracting " + format.getName() + " content from file", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the extraction timer of a format and outcome.
+     *
+     * @param format The document format
+     * @param outcome The outcome of the extraction
+     * @return The timer registered for the format and outcome
+     */
+    private Timer timer(DocumentFormat format, String outcome) {
+        return Timer.builder("teleprompter.extraction")
+                .description("Time spent extracting text from uploaded documents")
+                .tag("format", format.getName())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,56 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Strategy interface for a document format supported by the {@link DocumentExtractor}.
+ * Implementations are Spring beans, discovered and indexed by the {@link DocumentFormatRegistry}.
+ *
+ * @author Juan Carlos
+ */
+public interface DocumentFormat {
+
+    /**
+     * Returns the short name of the format, used in logs and metrics.
+     *
+     * @return The name of the format
+     */
+    String getName();
+
+    /**
+     * Returns the MIME types handled by this format.
+     *
+     * @return The MIME types of the format
+     */
+    Set<String> getMimeTypes();
+
+    /**
+     * Returns the file extensions handled by this format, without the leading dot.
+     *
+     * @return The file extensions of the format
+     */
+    Set<String> getExtensions();
+
+    /**
+     * Checks whether the first bytes of a file identify this format.
+     *
+     * @param header The first bytes of the file, possibly fewer than requested if the file is short
+     * @return true if the header matches the format signature, false otherwise
+     */
+    boolean matches(byte[] header);
+
+    /**
+     * Streams the text of a file into the normalizing writer.
+     *
+     * @param file The file to extract text from
+     * @param writer The writer that receives the normalized text
+     * @param progress Callback that receives the extraction progress as a percentage
+     * @throws IOException if an I/O error occurs or the file is not valid for this format
+     */
+    void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException;
+}
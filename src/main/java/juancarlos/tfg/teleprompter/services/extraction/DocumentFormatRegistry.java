@@ -0,0 +1,105 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Registry of the supported document formats.
+ * Resolves the format of a file from its magic bytes, its declared MIME type or its extension,
+ * in that order of preference.
+ *
+ * @author Juan Carlos
+ */
+@Component
+@Slf4j
+public class DocumentFormatRegistry {
+
+    private static final int HEADER_LENGTH = 512;
+    private static final String GENERIC_MIME_TYPE = "application/octet-stream";
+
+    private final List<DocumentFormat> formats;
+    private final Map<String, DocumentFormat> byMimeType = new HashMap<>();
+    private final Map<String, DocumentFormat> byExtension = new HashMap<>();
+
+    /**
+     * Constructs a new DocumentFormatRegistry indexing the given formats.
+     *
+     * @param formats The document format beans available in the application
+     */
+    public DocumentFormatRegistry(List<DocumentFormat> formats) {
+        this.formats = List.copyOf(formats);
+        for (DocumentFormat format : formats) {
+            format.getMimeTypes().forEach(mimeType -> byMimeType.put(mimeType, format));
+            format.getExtensions().forEach(extension -> byExtension.put(extension, format));
+        }
+        log.info("Registered document formats: {}", formats.stream().map(DocumentFormat::getName).toList());
+    }
+
+    /**
+     * Resolves the format of a file.
+     *
+     * @param file The file to inspect
+     * @param contentType The MIME type declared for the file, may be null
+     * @param fileName The original name of the file, may be null
+     * @return The resolved format, or an empty Optional if the file is not supported
+     * @throws IOException if an I/O error occurs while reading the file header
+     */
+    public Optional<DocumentFormat> resolve(Path file, String contentType, String fileName) throws IOException {
+        byte[] header = readHeader(file);
+        for (DocumentFormat format : formats) {
+            if (format.matches(header)) {
+                return Optional.of(format);
+            }
+        }
+
+        if (contentType != null && !contentType.equals(GENERIC_MIME_TYPE)) {
+            DocumentFormat format = byMimeType.get(baseMimeType(contentType));
+            if (format != null) {
+                return Optional.of(format);
+            }
+        }
+
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            if (dot >= 0) {
+                return Optional.ofNullable(byExtension.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Strips parameters such as the charset from a MIME type.
+     *
+     * @param contentType The MIME type to normalize
+     * @return The MIME type without parameters, in lower case
+     */
+    private static String baseMimeType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String base = semicolon >= 0 ? contentType.substring(0, semicolon) : contentType;
+        return base.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads the first bytes of a file for signature detection.
+     *
+     * @param file The file to read
+     * @return Up to {@value #HEADER_LENGTH} bytes from the start of the file
+     * @throws IOException if an I/O error occurs while reading the file
+     */
+    private static byte[] readHeader(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(HEADER_LENGTH);
+        }
+    }
+}
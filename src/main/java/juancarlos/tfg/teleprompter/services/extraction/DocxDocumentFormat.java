@@ -0,0 +1,97 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * DOCX document format.
+ * Streams the main document part through a SAX parser instead of building the POI object model.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class DocxDocumentFormat implements DocumentFormat {
+
+    private static final String MAIN_PART = "word/document.xml";
+
+    @Override
+    public String getName() {
+        return "docx";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("docx");
+    }
+
+    @Override
+    public boolean matches(byte[] header) {
+        return ZipXmlSupport.isZip(header)
+                && (ZipXmlSupport.containsAscii(header, "word/") || ZipXmlSupport.hasAsciiAt(header, "[Content_Types].xml", 30));
+    }
+
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        ZipXmlSupport.parseEntry(file, MAIN_PART, new DocxTextHandler(writer));
+    }
+
+    /**
+     * SAX handler that writes the text runs of a WordprocessingML document.
+     * Paragraphs, tabs and line breaks are turned into word boundaries.
+     */
+    private static final class DocxTextHandler extends DefaultHandler {
+
+        private static final String WORDML_NAMESPACE = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+        private final WhitespaceNormalizingWriter writer;
+        private boolean inText;
+
+        private DocxTextHandler(WhitespaceNormalizingWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!WORDML_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "t" -> inText = true;
+                case "tab", "br", "cr" -> writer.boundary();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!WORDML_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "t" -> inText = false;
+                case "p" -> writer.boundary();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) {
+                writer.write(ch, start, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntConsumer;
+
+/**
+ * Base class for UTF-8 text formats that are processed one line at a time.
+ *
+ * @author Juan Carlos
+ */
+public abstract class LineBasedDocumentFormat implements DocumentFormat {
+
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writeLine(line, writer);
+                writer.boundary();
+            }
+        }
+    }
+
+    /**
+     * Writes the text of a single line, without its line terminator.
+     *
+     * @param line The line read from the file
+     * @param writer The writer that receives the normalized text
+     */
+    protected abstract void writeLine(String line, WhitespaceNormalizingWriter writer);
+}
@@ -0,0 +1,100 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Markdown format.
+ * Drops block markers, emphasis characters, code fences and link targets, keeping the readable text.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class MarkdownDocumentFormat extends LineBasedDocumentFormat {
+
+    @Override
+    public String getName() {
+        return "markdown";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("text/markdown", "text/x-markdown");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("md", "markdown");
+    }
+
+    /**
+     * Markdown has no signature, so it is only resolved from its MIME type or extension.
+     *
+     * @param header The first bytes of the file
+     * @return always false
+     */
+    @Override
+    public boolean matches(byte[] header) {
+        return false;
+    }
+
+    @Override
+    protected void writeLine(String line, WhitespaceNormalizingWriter writer) {
+        int start = skipBlockMarkers(line);
+        if (line.startsWith("```", start) || line.startsWith("~~~", start)) {
+            return;
+        }
+
+        int i = start;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == '!' && i + 1 < line.length() && line.charAt(i + 1) == '[') {
+                i++;
+            } else if (c == ']' && i + 1 < line.length() && line.charAt(i + 1) == '(') {
+                int close = line.indexOf(')', i + 2);
+                if (close < 0) {
+                    break;
+                }
+                i = close;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                writer.write(line.charAt(++i));
+            } else if (c != '*' && c != '_' && c != '`' && c != '[' && c != ']') {
+                writer.write(c);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Skips heading, quote and list markers at the start of a line.
+     *
+     * @param line The line to inspect
+     * @return The index of the first character of the line content
+     */
+    private static int skipBlockMarkers(String line) {
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t' || c == '#' || c == '>') {
+                i++;
+            } else if ((c == '-' || c == '*' || c == '+') && i + 1 < line.length() && line.charAt(i + 1) == ' ') {
+                i += 2;
+            } else if (Character.isDigit(c)) {
+                int j = i;
+                while (j < line.length() && Character.isDigit(line.charAt(j))) {
+                    j++;
+                }
+                if (j + 1 < line.length() && (line.charAt(j) == '.' || line.charAt(j) == ')') && line.charAt(j + 1) == ' ') {
+                    i = j + 2;
+                } else {
+                    return i;
+                }
+            } else {
+                return i;
+            }
+        }
+        return i;
+    }
+}
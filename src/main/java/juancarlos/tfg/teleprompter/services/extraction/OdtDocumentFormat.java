@@ -0,0 +1,101 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * OpenDocument text format.
+ * Streams the content part through a SAX parser and writes the text of paragraphs and headings.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class OdtDocumentFormat implements DocumentFormat {
+
+    private static final String MIME_TYPE = "application/vnd.oasis.opendocument.text";
+    private static final String CONTENT_PART = "content.xml";
+
+    @Override
+    public String getName() {
+        return "odt";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of(MIME_TYPE);
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("odt");
+    }
+
+    /**
+     * OpenDocument packages store an uncompressed "mimetype" entry first,
+     * so the MIME type can be read at a fixed offset of the archive.
+     *
+     * @param header The first bytes of the file
+     * @return true if the header belongs to an OpenDocument text package, false otherwise
+     */
+    @Override
+    public boolean matches(byte[] header) {
+        return ZipXmlSupport.isZip(header)
+                && ZipXmlSupport.hasAsciiAt(header, "mimetype", 30)
+                && ZipXmlSupport.hasAsciiAt(header, MIME_TYPE, 38);
+    }
+
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        ZipXmlSupport.parseEntry(file, CONTENT_PART, new OdtTextHandler(writer));
+    }
+
+    /**
+     * SAX handler that writes the text of OpenDocument paragraphs and headings.
+     * Tabs, line breaks and space elements are turned into word boundaries.
+     */
+    private static final class OdtTextHandler extends DefaultHandler {
+
+        private static final String TEXT_NAMESPACE = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+        private final WhitespaceNormalizingWriter writer;
+        private int paragraphDepth;
+
+        private OdtTextHandler(WhitespaceNormalizingWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!TEXT_NAMESPACE.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "p", "h" -> paragraphDepth++;
+                case "tab", "line-break", "s" -> writer.boundary();
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (TEXT_NAMESPACE.equals(uri) && (localName.equals("p") || localName.equals("h"))) {
+                paragraphDepth--;
+                writer.boundary();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (paragraphDepth > 0) {
+                writer.write(ch, start, length);
+            }
+        }
+    }
+}
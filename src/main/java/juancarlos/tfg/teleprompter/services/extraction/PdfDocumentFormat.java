@@ -0,0 +1,70 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * PDF document format.
+ * Extracts text one page at a time with a PDFTextStripper created for each document, so no
+ * stripper state outlives an extraction or leaks between worker threads.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class PdfDocumentFormat implements DocumentFormat {
+
+    private static final String SIGNATURE = "%PDF-";
+
+    @Override
+    public String getName() {
+        return "pdf";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("application/pdf");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("pdf");
+    }
+
+    @Override
+    public boolean matches(byte[] header) {
+        return ZipXmlSupport.hasAsciiAt(header, SIGNATURE, 0);
+    }
+
+    /**
+     * Extracts the text of a PDF file one page at a time.
+     * The document is parsed from the file instead of the heap, and each page is written
+     * straight into the normalizing writer so only one page of text is held at once.
+     *
+     * @param file The PDF file
+     * @param writer The writer that receives the normalized text
+     * @param progress Callback that receives the extraction progress as a percentage
+     * @throws IOException if an I/O error occurs or the file is not a valid PDF
+     */
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        try (PDDocument document = PDDocument.load(file.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            int pages = document.getNumberOfPages();
+            for (int page = 1; page <= pages; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                stripper.writeText(document, writer);
+                writer.boundary();
+                progress.accept(page * 100 / pages);
+            }
+        }
+    }
+}
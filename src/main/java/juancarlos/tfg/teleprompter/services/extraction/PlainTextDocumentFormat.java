@@ -0,0 +1,57 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Plain text format.
+ * Streams the file through a buffered decoder using the platform charset.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class PlainTextDocumentFormat implements DocumentFormat {
+
+    @Override
+    public String getName() {
+        return "txt";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("text/plain");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("txt");
+    }
+
+    /**
+     * Plain text has no signature, so it is only resolved from its MIME type or extension.
+     *
+     * @param header The first bytes of the file
+     * @return always false
+     */
+    @Override
+    public boolean matches(byte[] header) {
+        return false;
+    }
+
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), Charset.defaultCharset()))) {
+            reader.transferTo(writer);
+        }
+    }
+}
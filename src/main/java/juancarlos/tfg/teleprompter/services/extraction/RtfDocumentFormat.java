@@ -0,0 +1,216 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Rich Text Format.
+ * Streams the control words of the file through a small state machine that keeps the body text
+ * and skips tables, pictures and other destinations that are not meant to be read.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class RtfDocumentFormat implements DocumentFormat {
+
+    private static final Set<String> SKIPPED_DESTINATIONS = Set.of(
+            "fonttbl", "colortbl", "stylesheet", "info", "pict", "object", "themedata", "colorschememapping",
+            "listtable", "listoverridetable", "rsidtbl", "generator", "xmlnstbl", "datastore", "latentstyles",
+            "filetbl", "revtbl", "fldinst", "header", "headerl", "headerr", "headerf",
+            "footer", "footerl", "footerr", "footerf", "footnote");
+    private static final Set<String> BREAKS = Set.of("par", "line", "tab", "sect", "page", "row", "cell", "emspace", "enspace");
+    private static final char[] ANSI_TABLE = new String(allBytes(), Charset.forName("windows-1252")).toCharArray();
+
+    @Override
+    public String getName() {
+        return "rtf";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("application/rtf", "text/rtf");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("rtf");
+    }
+
+    @Override
+    public boolean matches(byte[] header) {
+        return ZipXmlSupport.hasAsciiAt(header, "{\\rtf", 0);
+    }
+
+    @Override
+    public void extract(Path file, WhitespaceNormalizingWriter writer, IntConsumer progress) throws IOException {
+        try (PushbackReader reader = new PushbackReader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.ISO_8859_1)))) {
+            new RtfParser(reader, writer).parse();
+        }
+    }
+
+    /**
+     * Returns every byte value, used to build the ANSI code page lookup table.
+     *
+     * @return An array containing the bytes 0 to 255
+     */
+    private static byte[] allBytes() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * Single-use RTF parser that writes the readable text of a document.
+     */
+    private static final class RtfParser {
+
+        private final PushbackReader reader;
+        private final WhitespaceNormalizingWriter writer;
+        private final Deque<GroupState> groups = new ArrayDeque<>();
+        private final StringBuilder word = new StringBuilder();
+        private boolean skip;
+        private int unicodeSkip = 1;
+        private int pendingSkip;
+
+        private RtfParser(PushbackReader reader, WhitespaceNormalizingWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        private void parse() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                switch (c) {
+                    case '{' -> groups.push(new GroupState(skip, unicodeSkip));
+                    case '}' -> {
+                        if (!groups.isEmpty()) {
+                            GroupState state = groups.pop();
+                            skip = state.skip();
+                            unicodeSkip = state.unicodeSkip();
+                        }
+                    }
+                    case '\\' -> control();
+                    case '\r', '\n' -> {
+                    }
+                    default -> emit((char) c);
+                }
+            }
+        }
+
+        private void control() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return;
+            }
+            if (!isLetter(c)) {
+                controlSymbol(c);
+                return;
+            }
+
+            word.setLength(0);
+            while (c != -1 && isLetter(c)) {
+                word.append((char) c);
+                c = reader.read();
+            }
+
+            boolean negative = false;
+            if (c == '-') {
+                negative = true;
+                c = reader.read();
+            }
+            boolean hasParameter = false;
+            int parameter = 0;
+            while (c != -1 && Character.isDigit(c)) {
+                hasParameter = true;
+                parameter = parameter * 10 + (c - '0');
+                c = reader.read();
+            }
+            if (negative) {
+                parameter = -parameter;
+            }
+            if (c != ' ' && c != -1) {
+                reader.unread(c);
+            }
+
+            controlWord(word.toString(), hasParameter, parameter);
+        }
+
+        private void controlSymbol(int c) throws IOException {
+            switch (c) {
+                case '\\', '{', '}' -> emit((char) c);
+                case '~' -> emit(' ');
+                case '*' -> skip = true;
+                case '\r', '\n' -> boundary();
+                case '\'' -> {
+                    int high = Character.digit(reader.read(), 16);
+                    int low = Character.digit(reader.read(), 16);
+                    if (high >= 0 && low >= 0) {
+                        emit(ANSI_TABLE[high * 16 + low]);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void controlWord(String name, boolean hasParameter, int parameter) {
+            if (SKIPPED_DESTINATIONS.contains(name)) {
+                skip = true;
+            } else if (BREAKS.contains(name)) {
+                boundary();
+            } else if (name.equals("uc") && hasParameter) {
+                unicodeSkip = parameter;
+            } else if (name.equals("u") && hasParameter) {
+                if (!skip) {
+                    writer.write(parameter < 0 ? parameter + 65536 : parameter);
+                }
+                pendingSkip = unicodeSkip;
+            }
+        }
+
+        private void emit(char c) {
+            if (pendingSkip > 0) {
+                pendingSkip--;
+                return;
+            }
+            if (!skip) {
+                writer.write(c);
+            }
+        }
+
+        private void boundary() {
+            if (!skip) {
+                writer.boundary();
+            }
+        }
+
+        private static boolean isLetter(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
+
+    /**
+     * Parser state saved when a group is opened and restored when it is closed.
+     *
+     * @param skip Whether the text of the group is being skipped
+     * @param unicodeSkip The number of fallback characters that follow a Unicode escape
+     */
+    private record GroupState(boolean skip, int unicodeSkip) {
+    }
+}
@@ -0,0 +1,81 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import juancarlos.tfg.teleprompter.utils.WhitespaceNormalizingWriter;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * SubRip subtitle format.
+ * Keeps the subtitle text and drops cue numbers, timecodes and formatting tags.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class SrtDocumentFormat extends LineBasedDocumentFormat {
+
+    private static final Pattern CUE_START = Pattern.compile("^\\uFEFF?\\d+\\r?\\n\\d{2}:\\d{2}:\\d{2}[,.]\\d{3} -->");
+
+    @Override
+    public String getName() {
+        return "srt";
+    }
+
+    @Override
+    public Set<String> getMimeTypes() {
+        return Set.of("application/x-subrip", "text/srt");
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Set.of("srt");
+    }
+
+    @Override
+    public boolean matches(byte[] header) {
+        return CUE_START.matcher(new String(header, StandardCharsets.UTF_8)).find();
+    }
+
+    @Override
+    protected void writeLine(String line, WhitespaceNormalizingWriter writer) {
+        if (line.contains("-->") || isCueNumber(line)) {
+            return;
+        }
+
+        boolean inTag = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '<' || c == '{') {
+                inTag = true;
+            } else if (inTag && (c == '>' || c == '}')) {
+                inTag = false;
+            } else if (!inTag) {
+                writer.write(c);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a line only contains the sequence number of a cue.
+     *
+     * @param line The line to check
+     * @return true if the line is a cue number, false otherwise
+     */
+    private static boolean isCueNumber(String line) {
+        String trimmed = line.strip();
+        if (trimmed.startsWith("\uFEFF")) {
+            trimmed = trimmed.substring(1);
+        }
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (!Character.isDigit(trimmed.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+package juancarlos.tfg.teleprompter.services.extraction;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Helpers shared by the zip-packaged XML formats (DOCX, ODT).
+ *
+ * @author Juan Carlos
+ */
+final class ZipXmlSupport {
+
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+
+    private ZipXmlSupport() {
+    }
+
+    /**
+     * Checks whether a file header starts with the local file header signature of a zip archive.
+     *
+     * @param header The first bytes of the file
+     * @return true if the header belongs to a zip archive, false otherwise
+     */
+    static boolean isZip(byte[] header) {
+        return startsWith(header, ZIP_SIGNATURE, 0);
+    }
+
+    /**
+     * Checks whether a file header contains an ASCII string at the given offset.
+     *
+     * @param header The first bytes of the file
+     * @param text The ASCII text to look for
+     * @param offset The offset where the text must start
+     * @return true if the text is found at the offset, false otherwise
+     */
+    static boolean hasAsciiAt(byte[] header, String text, int offset) {
+        return startsWith(header, text.getBytes(StandardCharsets.US_ASCII), offset);
+    }
+
+    /**
+     * Checks whether a file header contains an ASCII string anywhere.
+     *
+     * @param header The first bytes of the file
+     * @param text The ASCII text to look for
+     * @return true if the text is found, false otherwise
+     */
+    static boolean containsAscii(byte[] header, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        for (int offset = 0; offset + bytes.length <= header.length; offset++) {
+            if (startsWith(header, bytes, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Streams one XML entry of a zip archive through a SAX handler.
+     * Document type declarations are rejected to prevent external entity expansion.
+     *
+     * @param file The zip archive
+     * @param entryName The name of the XML entry to parse
+     * @param handler The handler that receives the SAX events
+     * @throws IOException if an I/O error occurs, the entry is missing or the XML is not valid
+     */
+    static void parseEntry(Path file, String entryName, DefaultHandler handler) throws IOException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                throw new IOException("Document has no " + entryName + " part");
+            }
+
+            try (InputStream in = zip.getInputStream(entry)) {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                factory.newSAXParser().parse(in, handler);
+            } catch (ParserConfigurationException | SAXException e) {
+                throw new IOException("Invalid " + entryName + " part", e);
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] header, byte[] prefix, int offset) {
+        if (offset < 0 || header.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (header[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+import juancarlos.tfg.teleprompter.models.ChatMessage;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Component that writes and reads OpenAI chat completion payloads with the Jackson streaming API.
+ * Requests are generated straight into a UTF-8 byte buffer, and only the message content is pulled
+ * out of the responses, without building JSON trees or intermediate strings.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class ChatCompletionCodec {
+
+    private static final int BODY_OVERHEAD = 256;
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * Constructs a new ChatCompletionCodec.
+     *
+     * @param objectMapper The application mapper, whose factory configuration is reused
+     */
+    public ChatCompletionCodec(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Writes the JSON body of a chat completion request.
+     *
+     * @param model The model that must run the completion
+     * @param request The chat completion request
+     * @param stream Whether the completion must be streamed
+     * @return The UTF-8 encoded request body
+     * @throws IOException if the body cannot be written
+     */
+    public byte[] writeRequest(String model, ChatCompletionRequest request, boolean stream) throws IOException {
+        int estimate = BODY_OVERHEAD;
+        for (ChatMessage message : request.getMessages()) {
+            estimate += message.getContent().length();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(estimate);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("model", model);
+            if (stream) {
+                generator.writeBooleanField("stream", true);
+            }
+            if (request.isJsonResponse()) {
+                generator.writeObjectFieldStart("response_format");
+                generator.writeStringField("type", "json_object");
+                generator.writeEndObject();
+            }
+            generator.writeArrayFieldStart("messages");
+            for (ChatMessage message : request.getMessages()) {
+                generator.writeStartObject();
+                generator.writeStringField("role", message.getRole());
+                generator.writeStringField("content", message.getContent());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Extracts the assistant message of a chat completion response, choices[0].message.content.
+     *
+     * @param response The UTF-8 encoded response body
+     * @return The message content, or null if the response has none
+     * @throws IOException if the response is not valid JSON
+     */
+    public String readContent(byte[] response) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(response)) {
+            return firstChoiceContent(parser, "message");
+        }
+    }
+
+    /**
+     * Extracts the text fragment of a streamed chat completion chunk, choices[0].delta.content.
+     *
+     * @param chunk The JSON data of a server-sent event
+     * @return The text fragment, or null if the chunk has none
+     * @throws IOException if the chunk is not valid JSON
+     */
+    public String readDelta(String chunk) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(chunk)) {
+            return firstChoiceContent(parser, "delta");
+        }
+    }
+
+    /**
+     * Opens a parser on the JSON object embedded in a model answer.
+     * Anything before the first opening brace, such as a markdown code fence, is skipped,
+     * and anything after the object is never read.
+     *
+     * @param content The model answer
+     * @return A parser positioned on the start of the object, to be closed by the caller
+     * @throws IOException if the answer does not contain a JSON object
+     */
+    public JsonParser openEmbeddedObject(String content) throws IOException {
+        int start = content.indexOf('{');
+        if (start < 0) {
+            throw new IOException("The model answer does not contain a JSON object");
+        }
+        StringReader reader = new StringReader(content);
+        reader.skip(start);
+        JsonParser parser = jsonFactory.createParser(reader);
+        parser.nextToken();
+        return parser;
+    }
+
+    /**
+     * Navigates a chat completion object to the content of the first choice.
+     *
+     * @param parser The parser, positioned before the root object
+     * @param messageField The field of the choice holding the message, message or delta
+     * @return The content, or null if it is missing
+     * @throws IOException if the JSON cannot be read
+     */
+    private static String firstChoiceContent(JsonParser parser, String messageField) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a chat completion object");
+        }
+        if (!moveToField(parser, "choices") || parser.currentToken() != JsonToken.START_ARRAY
+                || parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        if (!moveToField(parser, messageField) || parser.currentToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        if (!moveToField(parser, "content")) {
+            return null;
+        }
+        return parser.currentToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+    }
+
+    /**
+     * Advances through the fields of the current object until the given one, skipping the others.
+     *
+     * @param parser The parser, positioned on the start of the object or on one of its values
+     * @param field The field to look for
+     * @return true if the parser is now positioned on the field's value, false if the object has no such field
+     * @throws IOException if the JSON cannot be read
+     */
+    private static boolean moveToField(JsonParser parser, String field) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+import juancarlos.tfg.teleprompter.services.AiHttpClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * Base class for providers exposing the OpenAI chat completions API.
+ * Request bodies are written by the {@link ChatCompletionCodec} and go through the shared, pooled
+ * {@link AiHttpClient}, which applies the per-host rate limit, circuit breaker and retries.
+ *
+ * @author Juan Carlos
+ */
+public abstract class OpenAiCompatibleProvider implements TranslationProvider {
+
+    private final String name;
+    private final AiHttpClient aiHttpClient;
+    private final ChatCompletionCodec codec;
+    private final String apiKey;
+    private final URI completionsUri;
+    private final String model;
+    private final double costPerMillionTokens;
+    private final boolean cacheable;
+
+    /**
+     * Constructs a new OpenAiCompatibleProvider.
+     *
+     * @param name The name of the provider
+     * @param aiHttpClient The client used for outbound calls
+     * @param codec The codec used to write the request bodies
+     * @param apiKey The API key, blank if the provider is not configured
+     * @param baseUrl The base URL of the API
+     * @param model The model used for translations
+     * @param costPerMillionTokens The price of the model in US dollars per million tokens
+     * @param cacheable Whether the translations of the provider may be stored and reused
+     */
+    protected OpenAiCompatibleProvider(String name, AiHttpClient aiHttpClient, ChatCompletionCodec codec,
+                                       String apiKey, String baseUrl, String model, double costPerMillionTokens,
+                                       boolean cacheable) {
+        this.name = name;
+        this.aiHttpClient = aiHttpClient;
+        this.codec = codec;
+        this.apiKey = apiKey;
+        this.completionsUri = URI.create(baseUrl + "/chat/completions");
+        this.model = model;
+        this.costPerMillionTokens = costPerMillionTokens;
+        this.cacheable = cacheable;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getModel() {
+        return model;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    @Override
+    public double getCostPerMillionTokens() {
+        return costPerMillionTokens;
+    }
+
+    @Override
+    public byte[] complete(ChatCompletionRequest request) throws IOException {
+        return aiHttpClient.postJson(completionsUri, apiKey, codec.writeRequest(model, request, false));
+    }
+
+    @Override
+    public void stream(ChatCompletionRequest request, Consumer<String> lineConsumer) throws IOException {
+        aiHttpClient.postJsonStream(completionsUri, apiKey, codec.writeRequest(model, request, true), lineConsumer);
+    }
+}
@@ -0,0 +1,34 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.services.AiHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Translation provider backed by the OpenAI API.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class OpenAiProvider extends OpenAiCompatibleProvider {
+
+    /**
+     * Constructs a new OpenAiProvider.
+     *
+     * @param aiHttpClient The client used for outbound calls
+     * @param codec The codec used to write the request bodies
+     * @param apiKey The OpenAI API key
+     * @param baseUrl The base URL of the OpenAI API
+     * @param model The model used for translations
+     * @param costPerMillionTokens The price of the model in US dollars per million tokens
+     * @param cacheable Whether the translations may be stored and reused, off when the base URL points at a fake
+     */
+    public OpenAiProvider(AiHttpClient aiHttpClient, ChatCompletionCodec codec,
+                          @Value("${OPENAI_API_KEY:}") String apiKey,
+                          @Value("${openai.api.base-url:https://api.openai.com/v1}") String baseUrl,
+                          @Value("${teleprompter.ai.openai.model:gpt-3.5-turbo}") String model,
+                          @Value("${teleprompter.ai.openai.cost-per-million-tokens:1.0}") double costPerMillionTokens,
+                          @Value("${teleprompter.ai.openai.cacheable:true}") boolean cacheable) {
+        super("openai", aiHttpClient, codec, apiKey, baseUrl, model, costPerMillionTokens, cacheable);
+    }
+}
@@ -0,0 +1,35 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.services.AiHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Translation provider backed by the OpenRouter API.
+ * Disabled unless an OpenRouter API key is configured.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class OpenRouterProvider extends OpenAiCompatibleProvider {
+
+    /**
+     * Constructs a new OpenRouterProvider.
+     *
+     * @param aiHttpClient The client used for outbound calls
+     * @param codec The codec used to write the request bodies
+     * @param apiKey The OpenRouter API key
+     * @param baseUrl The base URL of the OpenRouter API
+     * @param model The model used for translations
+     * @param costPerMillionTokens The price of the model in US dollars per million tokens
+     * @param cacheable Whether the translations may be stored and reused, off when the base URL points at a fake
+     */
+    public OpenRouterProvider(AiHttpClient aiHttpClient, ChatCompletionCodec codec,
+                              @Value("${openrouter.api.key:}") String apiKey,
+                              @Value("${openrouter.api.base-url:https://openrouter.ai/api/v1}") String baseUrl,
+                              @Value("${teleprompter.ai.openrouter.model:openai/gpt-3.5-turbo}") String model,
+                              @Value("${teleprompter.ai.openrouter.cost-per-million-tokens:1.0}") double costPerMillionTokens,
+                              @Value("${teleprompter.ai.openrouter.cacheable:true}") boolean cacheable) {
+        super("openrouter", aiHttpClient, codec, apiKey, baseUrl, model, costPerMillionTokens, cacheable);
+    }
+}
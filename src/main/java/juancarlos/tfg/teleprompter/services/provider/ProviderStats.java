@@ -0,0 +1,103 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import java.util.Arrays;
+
+/**
+ * Rolling latency and error statistics of a translation provider.
+ * Keeps the most recent samples in a fixed-size ring and ignores samples older than the window,
+ * so a provider that recovers from an incident is judged on its current behaviour only.
+ *
+ * @author Juan Carlos
+ */
+class ProviderStats {
+
+    private final long[] latencies;
+    private final long[] timestamps;
+    private final boolean[] failures;
+    private final long windowNanos;
+    private int next;
+    private int size;
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param capacity The maximum number of samples kept
+     * @param windowNanos The maximum age of a sample, in nanoseconds
+     */
+    ProviderStats(int capacity, long windowNanos) {
+        this.latencies = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.failures = new boolean[capacity];
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Records the outcome of a request.
+     *
+     * @param latencyNanos The latency of the request, in nanoseconds
+     * @param failed Whether the request failed
+     */
+    synchronized void record(long latencyNanos, boolean failed) {
+        latencies[next] = latencyNanos;
+        timestamps[next] = System.nanoTime();
+        failures[next] = failed;
+        next = (next + 1) % latencies.length;
+        size = Math.min(size + 1, latencies.length);
+    }
+
+    /**
+     * Computes the statistics of the samples inside the window.
+     *
+     * @return The current statistics
+     */
+    synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        long[] successful = new long[size];
+        int successes = 0;
+        int samples = 0;
+        for (int i = 0; i < size; i++) {
+            if (now - timestamps[i] > windowNanos) {
+                continue;
+            }
+            samples++;
+            if (!failures[i]) {
+                successful[successes++] = latencies[i];
+            }
+        }
+        if (samples == 0) {
+            return new Snapshot(0, 0, 0, 0, 0);
+        }
+        Arrays.sort(successful, 0, successes);
+        return new Snapshot(samples, (double) (samples - successes) / samples,
+                percentile(successful, successes, 0.50), percentile(successful, successes, 0.95),
+                percentile(successful, successes, 0.99));
+    }
+
+    /**
+     * Returns a percentile of the first values of a sorted array.
+     *
+     * @param sorted The sorted values
+     * @param count The number of values to consider
+     * @param quantile The quantile, between 0 and 1
+     * @return The percentile in milliseconds, or 0 if there are no values
+     */
+    private static long percentile(long[] sorted, int count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * count) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000;
+    }
+
+    /**
+     * Statistics of a provider at a point in time.
+     *
+     * @param samples The number of requests inside the window
+     * @param errorRate The fraction of those requests that failed
+     * @param p50Ms The median latency of the successful requests, in milliseconds
+     * @param p95Ms The 95th percentile latency of the successful requests, in milliseconds
+     * @param p99Ms The 99th percentile latency of the successful requests, in milliseconds
+     */
+    record Snapshot(int samples, double errorRate, long p50Ms, long p95Ms, long p99Ms) {
+    }
+}
@@ -0,0 +1,141 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+import juancarlos.tfg.teleprompter.models.ChatMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Local translation provider that answers without any network call.
+ * Returns fake translations that mark the target language, so the application can run offline
+ * and the router can be tested without API keys. Disabled unless teleprompter.ai.stub.enabled is set.
+ * Its translations are never stored in the translation memory.
+ *
+ * @author Juan Carlos
+ */
+@Component
+public class StubTranslationProvider implements TranslationProvider {
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long latencyMs;
+
+    /**
+     * Constructs a new StubTranslationProvider.
+     *
+     * @param objectMapper The mapper used to read requests and write responses
+     * @param enabled Whether the provider may receive requests
+     * @param latencyMs The delay added to every response, in milliseconds
+     */
+    public StubTranslationProvider(ObjectMapper objectMapper,
+                                   @Value("${teleprompter.ai.stub.enabled:false}") boolean enabled,
+                                   @Value("${teleprompter.ai.stub.latency-ms:50}") long latencyMs) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public String getModel() {
+        return getName();
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public double getCostPerMillionTokens() {
+        return 0;
+    }
+
+    @Override
+    public byte[] complete(ChatCompletionRequest request) throws IOException {
+        simulateLatency();
+        ObjectNode completion = objectMapper.createObjectNode();
+        completion.put("id", "stub").put("object", "chat.completion").put("model", getName());
+        completion.putArray("choices").addObject().put("index", 0).put("finish_reason", "stop")
+                .putObject("message").put("role", "assistant").put("content", answer(lastMessage(request)));
+        return objectMapper.writeValueAsBytes(completion);
+    }
+
+    @Override
+    public void stream(ChatCompletionRequest request, Consumer<String> lineConsumer) throws IOException {
+        simulateLatency();
+        for (String word : ("[stub] " + lastMessage(request)).split("(?<=\\s)")) {
+            ObjectNode chunk = objectMapper.createObjectNode().put("object", "chat.completion.chunk");
+            chunk.putArray("choices").addObject().put("index", 0).putObject("delta").put("content", word);
+            lineConsumer.accept("data: " + objectMapper.writeValueAsString(chunk));
+        }
+        lineConsumer.accept("data: [DONE]");
+    }
+
+    /**
+     * Builds the fake answer to a user message.
+     * Segment requests get one fake translation per segment; other requests get the message
+     * back with a marker, in the JSON format expected for plain translations.
+     *
+     * @param content The user message
+     * @return The assistant message
+     */
+    public String answer(String content) {
+        try {
+            JsonNode request = objectMapper.readTree(content);
+            if (request.path("segments").isArray()) {
+                ObjectNode answer = objectMapper.createObjectNode().put("original_language", "stub");
+                ArrayNode segments = answer.putArray("segments");
+                String language = request.path("target_language").asText();
+                request.path("segments").forEach(segment -> segments.add("[" + language + "] " + segment.asText()));
+                return objectMapper.writeValueAsString(answer);
+            }
+        } catch (IOException e) {
+            // Not a segment request, answer as a plain translation
+        }
+        return objectMapper.createObjectNode().put("text", "[stub] " + content).put("original_language", "stub").toString();
+    }
+
+    /**
+     * Returns the content of the last message of a request.
+     *
+     * @param request The chat completion request
+     * @return The content of the last message
+     */
+    private static String lastMessage(ChatCompletionRequest request) {
+        List<ChatMessage> messages = request.getMessages();
+        return messages.get(messages.size() - 1).getContent();
+    }
+
+    /**
+     * Waits for the configured latency.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    private void simulateLatency() throws InterruptedIOException {
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while simulating latency");
+        }
+    }
+}
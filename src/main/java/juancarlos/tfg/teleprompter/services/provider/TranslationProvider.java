@@ -0,0 +1,71 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Interface for a backend able to run chat completions for translations.
+ * Every implementation speaks the OpenAI chat completions format on the way out, so callers
+ * can parse the answers the same way whatever provider the {@link TranslationRouter} picked.
+ * Implementations are Spring beans and are discovered automatically.
+ *
+ * @author Juan Carlos
+ */
+public interface TranslationProvider {
+
+    /**
+     * Returns the name of the provider, used in logs and metrics.
+     *
+     * @return The provider name
+     */
+    String getName();
+
+    /**
+     * Returns the model the provider translates with, part of the keys translations are stored under.
+     *
+     * @return The model name
+     */
+    String getModel();
+
+    /**
+     * Checks whether the translations of the provider may be stored and reused.
+     * Fake or test providers return false, so their output never reaches the translation memory.
+     *
+     * @return true if the translations may be stored
+     */
+    boolean isCacheable();
+
+    /**
+     * Checks whether the provider is configured and may receive requests.
+     *
+     * @return true if the provider is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the price of the provider's model, used to break ties between similarly fast providers.
+     *
+     * @return The cost in US dollars per million tokens
+     */
+    double getCostPerMillionTokens();
+
+    /**
+     * Runs a chat completion.
+     *
+     * @param request The chat completion request
+     * @return The UTF-8 encoded response body, in the OpenAI chat completion format
+     * @throws IOException if the request fails
+     */
+    byte[] complete(ChatCompletionRequest request) throws IOException;
+
+    /**
+     * Runs a chat completion in streaming mode.
+     *
+     * @param request The chat completion request
+     * @param lineConsumer The consumer of the server-sent event lines, in the OpenAI chunk format
+     * @throws IOException if the request fails or the stream cannot be read
+     */
+    void stream(ChatCompletionRequest request, Consumer<String> lineConsumer) throws IOException;
+}
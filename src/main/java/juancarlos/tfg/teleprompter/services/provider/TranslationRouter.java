@@ -0,0 +1,382 @@
+package juancarlos.tfg.teleprompter.services.provider;
+
+import juancarlos.tfg.teleprompter.models.ChatCompletionRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Service class that picks the translation provider of every request.
+ * Providers are ranked by a score built from their rolling p50/p99 latency, error rate and cost;
+ * providers without recent samples get the average score of the others, so they are probed again
+ * after an incident without being preferred blindly. When the chosen provider has not answered
+ * within its usual p95 latency, or fails, a short request is hedged to the next provider and the
+ * first successful answer wins. Long requests are never hedged, since they are slow anyway and a
+ * second call would double their cost.
+ *
+ * @author Juan Carlos
+ */
+@Service
+@Slf4j
+public class TranslationRouter {
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+    private static final String CANCELLED = "cancelled";
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final List<TranslationProvider> providers;
+    private final Map<String, ProviderStats> stats = new HashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Counter hedges;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("translation-hedge-", 0).factory());
+    private final boolean hedgingEnabled;
+    private final long hedgeMinDelayMs;
+    private final int hedgeMaxChars;
+    private final double errorPenaltyMs;
+    private final double costWeightMs;
+
+    /**
+     * Constructs a new TranslationRouter.
+     *
+     * @param providers All the translation providers, enabled or not
+     * @param meterRegistry The registry the routing metrics are published to
+     * @param windowSize The maximum number of samples kept per provider
+     * @param windowSeconds The maximum age of a sample, in seconds
+     * @param hedgingEnabled Whether slow or failed requests are hedged to a second provider
+     * @param hedgeMinDelayMs The minimum wait before hedging a request, in milliseconds
+     * @param hedgeMaxChars The maximum length of the messages of a request that may be hedged, in characters
+     * @param errorPenaltyMs The score penalty of a provider whose requests all fail, in milliseconds
+     * @param costWeightMs The score penalty per US dollar per million tokens, in milliseconds
+     */
+    public TranslationRouter(List<TranslationProvider> providers, MeterRegistry meterRegistry,
+                             @Value("${teleprompter.ai.router.window-size:200}") int windowSize,
+                             @Value("${teleprompter.ai.router.window-seconds:120}") long windowSeconds,
+                             @Value("${teleprompter.ai.router.hedge.enabled:true}") boolean hedgingEnabled,
+                             @Value("${teleprompter.ai.router.hedge.min-delay-ms:500}") long hedgeMinDelayMs,
+                             @Value("${teleprompter.ai.router.hedge.max-chars:2000}") int hedgeMaxChars,
+                             @Value("${teleprompter.ai.router.error-penalty-ms:10000}") double errorPenaltyMs,
+                             @Value("${teleprompter.ai.router.cost-weight-ms:100}") double costWeightMs) {
+        this.providers = providers.stream().filter(TranslationProvider::isEnabled).toList();
+        this.meterRegistry = meterRegistry;
+        this.hedges = meterRegistry.counter("teleprompter.ai.hedges");
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+        this.hedgeMaxChars = hedgeMaxChars;
+        this.errorPenaltyMs = errorPenaltyMs;
+        this.costWeightMs = costWeightMs;
+
+        for (TranslationProvider provider : this.providers) {
+            stats.put(provider.getName(), new ProviderStats(windowSize, TimeUnit.SECONDS.toNanos(windowSeconds)));
+            Gauge.builder("teleprompter.ai.provider.score", provider, this::score)
+                    .description("Routing score of a translation provider, lower is preferred")
+                    .tag("provider", provider.getName())
+                    .register(meterRegistry);
+        }
+        log.info("Translation providers enabled: {}", this.providers.stream().map(TranslationProvider::getName).toList());
+    }
+
+    /**
+     * Returns the scopes the translations of the enabled providers are stored under,
+     * skipping providers whose translations must not be stored.
+     *
+     * @return The cache scopes, best provider first
+     */
+    public List<String> cacheScopes() {
+        if (providers.isEmpty()) {
+            return List.of();
+        }
+        try {
+            return rank().stream().map(TranslationRouter::cacheScope).filter(Objects::nonNull).toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * Returns the scope the translations of a provider are stored under: its name and model.
+     *
+     * @param provider The provider
+     * @return The cache scope, or null if the translations of the provider must not be stored
+     */
+    public static String cacheScope(TranslationProvider provider) {
+        return provider.isCacheable() ? provider.getName() + ":" + provider.getModel() : null;
+    }
+
+    /**
+     * Runs a chat completion on the best provider, hedging to the second best when it is slow or fails.
+     *
+     * @param request The chat completion request
+     * @return The response and the provider that produced it
+     * @throws IOException if no provider is enabled or every attempted provider failed
+     */
+    public Completion complete(ChatCompletionRequest request) throws IOException {
+        List<TranslationProvider> ranked = rank();
+        TranslationProvider primary = ranked.get(0);
+        long hedgeDelay = hedgeDelay(primary, request);
+        if (ranked.size() == 1 || hedgeDelay < 0) {
+            return call(primary, request);
+        }
+
+        CompletionService<Completion> race = new ExecutorCompletionService<>(executor);
+        List<Future<Completion>> attempts = new ArrayList<>(2);
+        attempts.add(race.submit(() -> call(primary, request)));
+        IOException failure = null;
+        try {
+            Future<Completion> first = race.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                try {
+                    return first.get();
+                } catch (ExecutionException e) {
+                    failure = asIOException(e);
+                }
+            }
+
+            TranslationProvider secondary = ranked.get(1);
+            log.debug("Hedging request from {} to {}", primary.getName(), secondary.getName());
+            hedges.increment();
+            attempts.add(race.submit(() -> call(secondary, request)));
+            for (int pending = first == null ? 2 : 1; pending > 0; pending--) {
+                try {
+                    return race.take().get();
+                } catch (ExecutionException e) {
+                    failure = asIOException(e);
+                }
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a translation provider");
+        } finally {
+            attempts.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    /**
+     * Runs a chat completion in streaming mode on the best provider.
+     * Falls back to the next provider when one fails before sending anything; once lines
+     * have been forwarded, a failure is propagated because the output cannot be taken back.
+     * The latency recorded for a stream is the time to its first line. An exception thrown by
+     * the consumer, for example because the client went away, aborts the stream and is rethrown
+     * as is; it is recorded as cancelled, not as a failure of the provider.
+     *
+     * @param request The chat completion request
+     * @param lineConsumer The consumer of the server-sent event lines
+     * @throws IOException if no provider is enabled or the stream failed
+     */
+    public void stream(ChatCompletionRequest request, Consumer<String> lineConsumer) throws IOException {
+        IOException failure = null;
+        for (TranslationProvider provider : rank()) {
+            long start = System.nanoTime();
+            AtomicLong firstLine = new AtomicLong();
+            String outcome = SUCCESS;
+            try {
+                provider.stream(request, line -> {
+                    firstLine.compareAndSet(0, System.nanoTime());
+                    try {
+                        lineConsumer.accept(line);
+                    } catch (RuntimeException e) {
+                        throw new ConsumerException(e);
+                    }
+                });
+                return;
+            } catch (ConsumerException e) {
+                outcome = CANCELLED;
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            } catch (IOException e) {
+                outcome = FAILURE;
+                if (firstLine.get() != 0) {
+                    throw e;
+                }
+                log.warn("Provider {} failed before streaming, trying the next one: {}", provider.getName(), e.getMessage());
+                failure = e;
+            } finally {
+                long end = firstLine.get() != 0 ? firstLine.get() : System.nanoTime();
+                record(provider, end - start, outcome);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Returns the enabled providers, best first.
+     *
+     * @return The ranked providers
+     * @throws IOException if no provider is enabled
+     */
+    private List<TranslationProvider> rank() throws IOException {
+        if (providers.isEmpty()) {
+            throw new IOException("No translation provider is enabled");
+        }
+        Map<TranslationProvider, Double> scores = scores();
+        return providers.stream().sorted(Comparator.comparingDouble(scores::get)).toList();
+    }
+
+    /**
+     * Computes the routing score of every provider, lower is better.
+     * The score is the mean of the p50 and p99 latencies plus penalties proportional to the
+     * error rate and to the cost. Failures are penalised on their own because a provider that
+     * fails fast would otherwise look fast. Providers without recent samples get the mean score
+     * of the providers with samples, plus their own cost, as a neutral prior.
+     *
+     * @return The score of every provider
+     */
+    private Map<TranslationProvider, Double> scores() {
+        Map<TranslationProvider, Double> scores = new HashMap<>();
+        List<TranslationProvider> unsampled = new ArrayList<>();
+        double sum = 0;
+        for (TranslationProvider provider : providers) {
+            ProviderStats.Snapshot snapshot = stats.get(provider.getName()).snapshot();
+            if (snapshot.samples() == 0) {
+                unsampled.add(provider);
+                continue;
+            }
+            double latency = (snapshot.p50Ms() + snapshot.p99Ms()) / 2.0;
+            double score = latency + errorPenaltyMs * snapshot.errorRate() + costWeightMs * provider.getCostPerMillionTokens();
+            scores.put(provider, score);
+            sum += score;
+        }
+        double prior = scores.isEmpty() ? 0 : sum / scores.size();
+        unsampled.forEach(provider -> scores.put(provider, prior + costWeightMs * provider.getCostPerMillionTokens()));
+        return scores;
+    }
+
+    /**
+     * Computes the routing score of a provider, for the metrics.
+     *
+     * @param provider The provider
+     * @return The score
+     */
+    private double score(TranslationProvider provider) {
+        return scores().get(provider);
+    }
+
+    /**
+     * Computes how long to wait for a provider before hedging a request: the p95 latency of its
+     * successful requests, never less than the configured minimum delay. Requests are not hedged
+     * when hedging is disabled, the request is long, or the provider has too few samples to
+     * know its usual latency.
+     *
+     * @param provider The provider
+     * @param request The chat completion request
+     * @return The delay in milliseconds, or -1 if the request must not be hedged
+     */
+    private long hedgeDelay(TranslationProvider provider, ChatCompletionRequest request) {
+        if (!hedgingEnabled || request.getMessages().stream().mapToInt(message -> message.getContent().length()).sum() > hedgeMaxChars) {
+            return -1;
+        }
+        ProviderStats.Snapshot snapshot = stats.get(provider.getName()).snapshot();
+        if (snapshot.samples() - Math.round(snapshot.samples() * snapshot.errorRate()) < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        return Math.max(snapshot.p95Ms(), hedgeMinDelayMs);
+    }
+
+    /**
+     * Runs a chat completion on a provider and records its outcome.
+     * A request cancelled because another provider answered first only shows up in the metrics:
+     * the time it had run says nothing about the latency of the provider, so it is kept out of
+     * the routing statistics.
+     *
+     * @param provider The provider
+     * @param request The chat completion request
+     * @return The response and the provider
+     * @throws IOException if the request fails
+     */
+    private Completion call(TranslationProvider provider, ChatCompletionRequest request) throws IOException {
+        long start = System.nanoTime();
+        try {
+            byte[] response = provider.complete(request);
+            record(provider, System.nanoTime() - start, SUCCESS);
+            return new Completion(provider, response);
+        } catch (IOException | RuntimeException e) {
+            record(provider, System.nanoTime() - start, Thread.currentThread().isInterrupted() ? CANCELLED : FAILURE);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the outcome of a request in the rolling statistics and the metrics.
+     * Cancelled requests are left out of the statistics.
+     *
+     * @param provider The provider
+     * @param latencyNanos The latency of the request, in nanoseconds
+     * @param outcome The outcome: success, failure or cancelled
+     */
+    private void record(TranslationProvider provider, long latencyNanos, String outcome) {
+        if (!outcome.equals(CANCELLED)) {
+            stats.get(provider.getName()).record(latencyNanos, outcome.equals(FAILURE));
+        }
+        meterRegistry.timer("teleprompter.ai.provider.requests", "provider", provider.getName(), "outcome", outcome)
+                .record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Unwraps the failure of an attempt.
+     *
+     * @param e The exception thrown by the attempt's future
+     * @return The original exception as an IOException
+     */
+    private static IOException asIOException(ExecutionException e) {
+        return e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+
+    /**
+     * Stops the hedging executor when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The answer to a chat completion and the provider that produced it.
+     *
+     * @param provider The provider that answered
+     * @param body The UTF-8 encoded response body, in the OpenAI chat completion format
+     */
+    public record Completion(TranslationProvider provider, byte[] body) {
+    }
+
+    /**
+     * Exception that carries an exception thrown by the consumer of a stream through the
+     * provider and the HTTP client, so it is not mistaken for a failure of the provider.
+     */
+    private static final class ConsumerException extends RuntimeException {
+
+        /**
+         * Constructs a new ConsumerException.
+         *
+         * @param cause The exception thrown by the consumer
+         */
+        ConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import juancarlos.tfg.teleprompter.enums.CircuitState;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker that stops calling an upstream service after repeated failures.
+ * Opens after a number of consecutive failures, rejects requests while open, and after
+ * a cool-down lets a single probe through: the circuit closes if it succeeds and opens
+ * again if it fails.
+ *
+ * @author Juan Carlos
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    /**
+     * Creates a new closed circuit breaker.
+     *
+     * @param failureThreshold The number of consecutive failures that opens the circuit
+     * @param openDuration How long the circuit stays open before a probe is allowed
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Checks whether a request may be sent now.
+     *
+     * @return true if the request may be sent, false if the circuit is open or a probe is already running
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = CircuitState.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        state = CircuitState.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * Records a failed request, opening the circuit when the probe failed or the threshold is reached.
+     */
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = CircuitState.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a request that was let through but never sent, for example because it timed out
+     * waiting for a local resource. The state is left unchanged, and in the half-open state
+     * another probe is allowed.
+     */
+    public synchronized void onCancelled() {
+        probeInFlight = false;
+    }
+
+    /**
+     * Returns the current state of the circuit.
+     *
+     * @return The circuit state
+     */
+    public synchronized CircuitState getState() {
+        return state;
+    }
+}
@@ -0,0 +1,148 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls into a single execution.
+ * The first caller of a key runs the call; callers arriving with the same key while it is
+ * in flight wait for it and receive the same result. Nothing is kept once the call ends,
+ * so later callers run the call again. Calls over several keys at once, such as a batch of
+ * sentences, run only for the keys nobody else is computing and join the others.
+ *
+ * @param <K> The type of the keys identifying identical calls
+ * @param <V> The type of the results
+ * @author Juan Carlos
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs a call, or joins the identical call already in flight.
+     *
+     * @param key The key identifying the call
+     * @param call The call to run if none is in flight for the key
+     * @return The result of the call
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        try {
+            V value = call.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Runs a call for several keys at once, joining the calls already in flight for some of them.
+     * The call receives only the keys no other caller is computing; the results of the other
+     * keys are taken from the calls that own them, once this caller's own call has finished,
+     * so two callers waiting on each other's keys cannot deadlock.
+     *
+     * @param keys The keys to compute
+     * @param call The call computing the results of a list of keys; keys left out of its result have none
+     * @return The results by key; keys without a result are left out
+     */
+    public Map<K, V> executeAll(Collection<K> keys, Function<List<K>, Map<K, V>> call) {
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> joined = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (owned.containsKey(key) || joined.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+            if (existing != null) {
+                coalesced.increment();
+                joined.put(key, existing);
+            } else {
+                owned.put(key, created);
+            }
+        }
+
+        Map<K, V> results = new HashMap<>();
+        try {
+            if (!owned.isEmpty()) {
+                Map<K, V> values = call.apply(new ArrayList<>(owned.keySet()));
+                owned.forEach((key, future) -> {
+                    V value = values.get(key);
+                    future.complete(value);
+                    if (value != null) {
+                        results.put(key, value);
+                    }
+                });
+            }
+        } catch (RuntimeException | Error e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            owned.forEach(inFlight::remove);
+        }
+
+        joined.forEach((key, future) -> {
+            V value = join(future);
+            if (value != null) {
+                results.put(key, value);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Returns the number of calls that joined a call already in flight.
+     *
+     * @return The number of coalesced calls
+     */
+    public double getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Waits for a call in flight, rethrowing its unchecked exception as is.
+     *
+     * @param future The result of the call
+     * @return The result
+     */
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of distinct calls currently in flight.
+     *
+     * @return The number of calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
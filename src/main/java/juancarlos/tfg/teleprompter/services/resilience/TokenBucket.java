@@ -0,0 +1,121 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import java.time.Duration;
+
+/**
+ * Token bucket rate limiter whose rate can be retuned at runtime.
+ * Each request takes one token; tokens refill continuously up to the bucket capacity.
+ * The rate is adjusted from the rate-limit headers of the upstream service, and the
+ * bucket can be paused entirely when the service asks callers to back off.
+ *
+ * @author Juan Carlos
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private double capacity;
+    private double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    /**
+     * Creates a new full bucket.
+     *
+     * @param requestsPerMinute The initial number of requests allowed per minute
+     */
+    public TokenBucket(long requestsPerMinute) {
+        setRate(requestsPerMinute);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Takes a token, waiting for one to become available.
+     *
+     * @param maxWait The maximum time to wait
+     * @return true if a token was taken, false if none would become available in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean acquire(Duration maxWait) throws InterruptedException {
+        long wait = reserve(maxWait.toNanos());
+        if (wait < 0) {
+            return false;
+        }
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+        return true;
+    }
+
+    /**
+     * Retunes the bucket from the rate-limit headers of a response.
+     *
+     * @param limitPerMinute The number of requests the upstream allows per minute
+     * @param remaining The number of requests left in the current window
+     */
+    public synchronized void update(long limitPerMinute, long remaining) {
+        refill(System.nanoTime());
+        setRate(limitPerMinute);
+        tokens = Math.min(tokens, Math.max(0, remaining));
+    }
+
+    /**
+     * Stops handing out tokens for a while, after the upstream asked callers to back off.
+     *
+     * @param duration How long to pause
+     */
+    public synchronized void pause(Duration duration) {
+        long now = System.nanoTime();
+        refill(now);
+        tokens = 0;
+        pausedUntil = Math.max(pausedUntil, now + duration.toNanos());
+    }
+
+    /**
+     * Reserves a token and returns how long the caller has to wait for it.
+     *
+     * @param maxWaitNanos The maximum acceptable wait
+     * @return The wait in nanoseconds, or -1 if it would exceed the maximum and nothing was reserved
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        refill(now);
+        long wait = Math.max(0, pausedUntil - now);
+        double deficit = 1 - tokens;
+        if (deficit > 0) {
+            wait += (long) Math.ceil(deficit / tokensPerNano);
+        }
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill.
+     *
+     * @param now The current time in nanoseconds
+     */
+    private void refill(long now) {
+        if (now > pausedUntil) {
+            long from = Math.max(lastRefill, pausedUntil);
+            tokens = Math.min(capacity, tokens + (now - from) * tokensPerNano);
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * Sets the refill rate and capacity, allowing bursts of up to one second of requests.
+     *
+     * @param requestsPerMinute The number of requests allowed per minute
+     */
+    private void setRate(long requestsPerMinute) {
+        double perSecond = Math.max(1, requestsPerMinute) / 60.0;
+        tokensPerNano = perSecond / NANOS_PER_SECOND;
+        capacity = Math.max(1, perSecond);
+    }
+}
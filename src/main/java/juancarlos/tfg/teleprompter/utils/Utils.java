@@ -1,52 +1,92 @@
 package juancarlos.tfg.teleprompter.utils;
 
-import juancarlos.tfg.teleprompter.models.User;
-import juancarlos.tfg.teleprompter.repositories.UserRepository;
+import juancarlos.tfg.teleprompter.models.CurrentPrincipal;
+import juancarlos.tfg.teleprompter.services.PrincipalCacheService;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 /**
  * Utility class that provides common helper methods for user authentication and validation.
- * Contains methods for checking user session status and user existence.
+ * Contains methods for resolving the logged in user.
  *
  * @author Juan Carlos
  */
 @Component
 public class Utils {
 
-    private final UserRepository userRepository;
+    private static final String PRINCIPAL_ATTRIBUTE = Utils.class.getName() + ".principal";
+
+    private final PrincipalCacheService principalCacheService;
 
     /**
-     * Constructs a new Utils instance with the specified UserRepository.
+     * Constructs a new Utils instance with the specified PrincipalCacheService.
      *
-     * @param userRepository The repository for user operations
+     * @param principalCacheService The cache used to resolve the logged in user
      */
-    public Utils(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public Utils(PrincipalCacheService principalCacheService) {
+        this.principalCacheService = principalCacheService;
     }
 
     /**
-     * Checks if a user is not logged in by verifying the session attribute.
+     * Returns the username of the user making the current request.
+     * A valid bearer token takes precedence and is resolved without any database access;
+     * otherwise the user of an existing HTTP session is used. No session is ever created.
      *
-     * @param session The HTTP session to check
-     * @return true if no user is logged in, false otherwise
+     * @return The username, or null if the request is not authenticated
      */
-    public boolean isNotLogged(HttpSession session) {
-        return session.getAttribute("user") == null;
+    public String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof JwtAuthenticationToken token) {
+            return token.getName();
+        }
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+        HttpSession session = attributes.getRequest().getSession(false);
+        return session == null ? null : (String) session.getAttribute("user");
     }
 
     /**
-     * Checks if a user already exists in the system by username or email.
+     * Returns the principal of the user making the current request.
+     * The principal is resolved through the principal cache once and kept as a request attribute,
+     * so further calls during the same request are free.
      *
-     * @param user The user to check for existence
-     * @return true if the user exists (by username or email), false otherwise
+     * @return The principal, or null if the request is not authenticated or its user no longer exists
      */
-    public boolean userExists(User user) {
-        return userRepository.findByUsername(user.getUsername()).isPresent() ||
-               userRepository.findByEmail(user.getEmail()).isPresent();
+    public CurrentPrincipal currentPrincipal() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && attributes.getAttribute(PRINCIPAL_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof CurrentPrincipal principal) {
+            return principal;
+        }
+        CurrentPrincipal principal = principalCacheService.resolve(currentUsername());
+        if (attributes != null && principal != null) {
+            attributes.setAttribute(PRINCIPAL_ATTRIBUTE, principal, RequestAttributes.SCOPE_REQUEST);
+        }
+        return principal;
     }
-}
-
-
 
+    /**
+     * Checks if the user making the current request is an administrator.
+     *
+     * @return true if the user is logged in and has the administrator role, false otherwise
+     */
+    public boolean isAdmin() {
+        CurrentPrincipal principal = currentPrincipal();
+        return principal != null && principal.isAdmin();
+    }
 
+    /**
+     * Checks if the user making the current request is not logged in.
+     *
+     * @return true if no user is logged in, false otherwise
+     */
+    public boolean isNotLogged() {
+        return currentUsername() == null;
+    }
+}
@@ -0,0 +1,137 @@
+package juancarlos.tfg.teleprompter.utils;
+
+import java.io.Writer;
+
+/**
+ * Writer that normalizes whitespace while text is being written.
+ * Every run of whitespace characters (including line breaks) is collapsed into a single space,
+ * and leading and trailing whitespace is dropped, so the target buffer receives the final text
+ * in a single pass without intermediate copies or regular expressions.
+ *
+ * @author Juan Carlos
+ */
+public class WhitespaceNormalizingWriter extends Writer {
+
+    private final StringBuilder target;
+    private boolean pendingSpace;
+
+    /**
+     * Creates a new normalizing writer with an empty target buffer.
+     */
+    public WhitespaceNormalizingWriter() {
+        this(new StringBuilder());
+    }
+
+    /**
+     * Creates a new normalizing writer that appends to the given buffer.
+     *
+     * @param target The buffer that receives the normalized text
+     */
+    public WhitespaceNormalizingWriter(StringBuilder target) {
+        this.target = target;
+    }
+
+    /**
+     * Writes a portion of a character array, collapsing whitespace on the fly.
+     *
+     * @param chars The characters to write
+     * @param offset The offset of the first character to write
+     * @param length The number of characters to write
+     */
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            appendNormalized(chars[i]);
+        }
+    }
+
+    /**
+     * Writes a portion of a string, collapsing whitespace on the fly.
+     *
+     * @param str The string to write
+     * @param offset The offset of the first character to write
+     * @param length The number of characters to write
+     */
+    @Override
+    public void write(String str, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            appendNormalized(str.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a string, collapsing whitespace on the fly.
+     *
+     * @param str The string to write
+     */
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Writes a single character, collapsing whitespace on the fly.
+     *
+     * @param c The character to write
+     */
+    @Override
+    public void write(int c) {
+        appendNormalized((char) c);
+    }
+
+    /**
+     * Marks a word boundary, equivalent to writing a single whitespace character.
+     */
+    public void boundary() {
+        if (!target.isEmpty()) {
+            pendingSpace = true;
+        }
+    }
+
+    /**
+     * Returns the number of characters written to the target buffer so far.
+     *
+     * @return The length of the normalized text
+     */
+    public int length() {
+        return target.length();
+    }
+
+    /**
+     * Returns the normalized text written so far.
+     *
+     * @return The normalized text
+     */
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Appends a character to the target, deferring whitespace until the next visible character.
+     * Uses the same whitespace class as the regular expression {@code \s}.
+     *
+     * @param c The character to append
+     */
+    private void appendNormalized(char c) {
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+            boundary();
+            return;
+        }
+        if (pendingSpace) {
+            target.append(' ');
+            pendingSpace = false;
+        }
+        target.append(c);
+    }
+}
@@ -0,0 +1,37 @@
+-- Schema of the first release, as generated by Hibernate with ddl-auto=update.
+-- Databases created by that release already have it and are baselined at version 1,
+-- so this script only runs on new databases.
+
+create table users (
+    id bigint not null auto_increment,
+    created_date date,
+    email varchar(255),
+    last_login_date date,
+    password varchar(255),
+    role varchar(255),
+    token varchar(255),
+    token_expiry_date date,
+    updated_date date,
+    username varchar(255),
+    verified bit not null,
+    primary key (id)
+) engine=InnoDB;
+
+create table teleprompter (
+    id bigint not null auto_increment,
+    content LONGTEXT,
+    created_date date,
+    description varchar(255),
+    file_name varchar(255) not null,
+    file_path varchar(255) not null,
+    language varchar(255),
+    name varchar(255) not null,
+    speed integer,
+    type integer,
+    updated_date date,
+    user_id bigint,
+    primary key (id)
+) engine=InnoDB;
+
+alter table teleprompter
+    add constraint FKbessiakxv3lhhq1qpswagctqf foreign key (user_id) references users (id);
@@ -0,0 +1,63 @@
+-- Tables and columns added since the first release: compressed script content, the
+-- content-addressed upload store, the translation memory, refresh tokens and scheduler leases.
+-- Script text stays in teleprompter.content until V3 moves it.
+
+create table teleprompter_content (
+    id bigint not null auto_increment,
+    data longblob not null,
+    uncompressed_length integer not null,
+    checksum bigint not null,
+    codec varchar(16) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table teleprompter
+    add column content_id bigint,
+    add column version bigint default 0 not null,
+    add column blob_digest varchar(64),
+    add constraint uk_teleprompter_content unique (content_id),
+    add constraint fk_teleprompter_content foreign key (content_id) references teleprompter_content (id);
+
+alter table users
+    add index idx_users_verified_token_expiry (verified, token_expiry_date);
+
+create table stored_blob (
+    digest varchar(64) not null,
+    size bigint not null,
+    reference_count integer not null,
+    created_date date,
+    primary key (digest)
+) engine=InnoDB;
+
+create table translation_memory (
+    segment_key varchar(64) not null,
+    source_text text not null,
+    target_text text not null,
+    original_language varchar(255),
+    target_language varchar(255),
+    created_at datetime(6),
+    primary key (segment_key)
+) engine=InnoDB;
+
+create table refresh_token (
+    id bigint not null auto_increment,
+    token_hash varchar(64) not null,
+    family_id varchar(36) not null,
+    user_id bigint not null,
+    expires_at datetime(6) not null,
+    used_at datetime(6),
+    primary key (id),
+    constraint uk_refresh_token_hash unique (token_hash),
+    constraint fk_refresh_token_user foreign key (user_id) references users (id) on delete cascade,
+    index idx_refresh_token_family (family_id),
+    index idx_refresh_token_expires_at (expires_at),
+    index idx_refresh_token_user (user_id)
+) engine=InnoDB;
+
+create table scheduler_lock (
+    name varchar(64) not null,
+    locked_until datetime(6) not null,
+    locked_at datetime(6),
+    locked_by varchar(255),
+    primary key (name)
+) engine=InnoDB;
@@ -0,0 +1,14 @@
+-- Indexes for the user and teleprompter lookups done on every request, and the uniqueness
+-- rules the application relies on instead of checking before inserting.
+-- V4 stops the migration if the tables contain duplicates. They are listed by:
+--   select username, count(*) from users where username is not null group by username having count(*) > 1;
+--   select email, count(*) from users where email is not null group by email having count(*) > 1;
+--   select user_id, name, count(*) from teleprompter where user_id is not null group by user_id, name having count(*) > 1;
+
+alter table users
+    add constraint uk_users_username unique (username),
+    add constraint uk_users_email unique (email),
+    add index idx_users_token (token);
+
+alter table teleprompter
+    add constraint uk_teleprompter_user_name unique (user_id, name);
@@ -0,0 +1,10 @@
+-- Stored sentence translations expire like the in-memory cache in front of them.
+-- Existing rows are kept for one cache lifetime from the time they were stored.
+
+alter table translation_memory
+    add column expires_at datetime(6),
+    add index idx_translation_memory_expires_at (expires_at);
+
+update translation_memory
+set expires_at = date_add(coalesce(created_at, current_timestamp(6)), interval 30 day)
+where expires_at is null;
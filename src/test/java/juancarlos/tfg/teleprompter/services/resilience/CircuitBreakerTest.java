@@ -0,0 +1,160 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import juancarlos.tfg.teleprompter.enums.CircuitState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ *
+ * @author Juan Carlos
+ */
+class CircuitBreakerTest {
+
+    private static final Duration OPEN = Duration.ofMillis(50);
+
+    @Test
+    void staysClosedBelowThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN);
+
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void successResetsConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAtThresholdAndRejects() {
+        CircuitBreaker breaker = openBreaker();
+
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void letsSingleProbeThroughAfterCoolDown() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN.toMillis() * 2);
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void successfulProbeClosesCircuit() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN.toMillis() * 2);
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onSuccess();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeReopensCircuit() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN.toMillis() * 2);
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void cancelledProbeAllowsAnotherProbe() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN.toMillis() * 2);
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onCancelled();
+
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void cancelledRequestDoesNotCountAsFailure() {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onCancelled();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void concurrentCallersGetOneProbe() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN.toMillis() * 2);
+
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Callable<Boolean> call = () -> {
+                    start.await();
+                    return breaker.tryAcquire();
+                };
+                results.add(executor.submit(call));
+            }
+            start.countDown();
+
+            int admitted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    admitted++;
+                }
+            }
+            assertEquals(1, admitted);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a circuit breaker and opens it with consecutive failures.
+     *
+     * @return The open circuit breaker
+     */
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        return breaker;
+    }
+}
@@ -0,0 +1,199 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SingleFlight}.
+ *
+ * @author Juan Carlos
+ */
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            waitForCoalesced(singleFlight, CALLERS - 1);
+            assertEquals(1, singleFlight.getInFlight());
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+            assertEquals(0, singleFlight.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failureReachesEveryCaller() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    await(release);
+                    throw new IllegalStateException("failed");
+                })));
+            }
+            waitForCoalesced(singleFlight, CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedCallsAreNotReused() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(0, singleFlight.getCoalesced());
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+    @Test
+    void differentKeysRunSeparately() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        assertEquals("a", singleFlight.execute("a", () -> "a"));
+        assertEquals("b", singleFlight.execute("b", () -> "b"));
+    }
+
+    @Test
+    void batchCallRunsOnlyKeysNotInFlight() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<String>> calls = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<String, String>> first = executor.submit(() -> singleFlight.executeAll(List.of("a", "b"), keys -> {
+                calls.add(keys);
+                await(release);
+                return upperCase(keys);
+            }));
+            waitForInFlight(singleFlight, 2);
+
+            Future<Map<String, String>> second = executor.submit(() -> singleFlight.executeAll(List.of("b", "c", "c"), keys -> {
+                calls.add(keys);
+                return upperCase(keys);
+            }));
+            waitForCoalesced(singleFlight, 1);
+            release.countDown();
+
+            assertEquals(Map.of("a", "A", "b", "B"), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Map.of("b", "B", "c", "C"), second.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of(List.of("a", "b"), List.of("c")), calls);
+            assertEquals(0, singleFlight.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void batchKeysWithoutResultAreLeftOut() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        Map<String, String> results = singleFlight.executeAll(List.of("a", "b"), keys -> Map.of("a", "A"));
+
+        assertEquals(Map.of("a", "A"), results);
+        assertEquals(0, singleFlight.getInFlight());
+    }
+
+    /**
+     * Maps every key to its upper-case form.
+     *
+     * @param keys The keys
+     * @return The upper-case form of every key
+     */
+    private static Map<String, String> upperCase(List<String> keys) {
+        return keys.stream().collect(Collectors.toMap(key -> key, key -> key.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Waits until a number of keys are in flight.
+     *
+     * @param singleFlight The single flight the callers use
+     * @param expected The expected number of keys in flight
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void waitForInFlight(SingleFlight<?, ?> singleFlight, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getInFlight() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, singleFlight.getInFlight());
+    }
+
+    /**
+     * Waits until a number of callers have joined the call in flight.
+     *
+     * @param singleFlight The single flight the callers use
+     * @param expected The expected number of coalesced callers
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void waitForCoalesced(SingleFlight<?, ?> singleFlight, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getCoalesced() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(singleFlight.getCoalesced() >= expected, "coalesced " + singleFlight.getCoalesced());
+    }
+
+    /**
+     * Waits for a latch, turning an interruption into an unchecked exception.
+     *
+     * @param latch The latch to wait for
+     */
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
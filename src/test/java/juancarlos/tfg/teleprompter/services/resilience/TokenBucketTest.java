@@ -0,0 +1,107 @@
+package juancarlos.tfg.teleprompter.services.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TokenBucket}.
+ *
+ * @author Juan Carlos
+ */
+class TokenBucketTest {
+
+    @Test
+    void startsFullAndRejectsWhenEmpty() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(600);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.acquire(Duration.ZERO));
+        }
+        assertFalse(bucket.acquire(Duration.ZERO));
+    }
+
+    @Test
+    void waitsForRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(6000);
+        drain(bucket);
+
+        long start = System.nanoTime();
+        assertTrue(bucket.acquire(Duration.ofMillis(500)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    void pauseBlocksTokens() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(6000);
+
+        bucket.pause(Duration.ofSeconds(5));
+
+        assertFalse(bucket.acquire(Duration.ZERO));
+        assertFalse(bucket.acquire(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void updateLimitsTokensToRemaining() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(6000);
+
+        bucket.update(60, 0);
+
+        assertFalse(bucket.acquire(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void concurrentCallersDoNotExceedCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(600);
+        int threads = 16;
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long begin = System.nanoTime();
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 10; j++) {
+                            if (bucket.acquire(Duration.ZERO)) {
+                                acquired.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        double elapsedSeconds = (System.nanoTime() - begin) / 1e9;
+        int allowed = 10 + (int) Math.ceil(elapsedSeconds * 10);
+        assertTrue(acquired.get() >= 10, "acquired " + acquired.get());
+        assertTrue(acquired.get() <= allowed, "acquired " + acquired.get() + ", allowed " + allowed);
+    }
+
+    /**
+     * Takes every token available right now.
+     *
+     * @param bucket The bucket to drain
+     * @throws InterruptedException never, the calls do not wait
+     */
+    private static void drain(TokenBucket bucket) throws InterruptedException {
+        while (bucket.acquire(Duration.ZERO)) {
+            // keep taking tokens
+        }
+    }
+}